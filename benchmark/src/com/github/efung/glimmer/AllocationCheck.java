@@ -0,0 +1,221 @@
+package com.github.efung.glimmer;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the steady-state frame loop of every scene and exits with an error if any of it allocated. GC pauses show up
+ * as stutter on older devices, so nothing on the per-frame path may allocate.
+ *
+ * Covers the emitter, initializers and modifiers through ParticleStore.update(), the colour trajectory, orientation
+ * filtering, packing render states and finding what changed in them, frame profiling, the FPS overlay text and, on the updating thread, parallel
+ * updates, handing over to the simulation thread and the lightweight closed-form animation. Usage: ant allocation-check
+ */
+public class AllocationCheck
+{
+    private static final String RESOLUTION = "1080p";
+    private static final int DOT_SIZE = 24;
+    private static final int FRAMES = 24 * 30;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(final String[] pArgs)
+    {
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+        // The first call may initialize classes of its own. Likewise, counts must be read before anything else runs,
+        // as even a string literal allocates the first time it is used.
+        getAllocatedBytes();
+
+        int failures = 0;
+        failures += checkFadingScene();
+        failures += checkColourChangeScene();
+        failures += checkReflectLightScene();
+        failures += checkParallelUpdate();
+        failures += checkSimulation();
+        failures += checkClosedForm();
+        failures += checkFpsOverlay();
+
+        if (failures > 0)
+        {
+            System.err.println(failures + " allocation check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("No allocations in " + FRAMES + " frames of each scene");
+    }
+
+    private static int checkFadingScene()
+    {
+        final ParticleStore store = BenchmarkScenes.createStaticColourScene(BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE))
+                .getParticleStore();
+        // As when the FPS overlay is shown
+        final FrameProfiler frameProfiler = new FrameProfiler();
+        store.setFrameProfiler(frameProfiler);
+        store.update(BenchmarkScenes.FRAME_SECONDS);
+        frameProfiler.endFrame(0L);
+
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            store.update(BenchmarkScenes.FRAME_SECONDS);
+            frameProfiler.endFrame(frame * 1000L);
+        }
+        final long allocated = getAllocatedBytes() - before;
+        return report("Static Colour", allocated);
+    }
+
+    private static int checkColourChangeScene()
+    {
+        final GridScene scene = BenchmarkScenes.createColourChangeScene(BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE));
+        final ParticleStore store = scene.getParticleStore();
+        final ColorTrajectoryUpdateHandler colorHandler = scene.getColorTrajectoryHandler();
+        colorHandler.onUpdate(BenchmarkScenes.FRAME_SECONDS);
+
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            colorHandler.onUpdate(BenchmarkScenes.FRAME_SECONDS);
+            store.update(BenchmarkScenes.FRAME_SECONDS);
+        }
+        final long allocated = getAllocatedBytes() - before;
+        scene.release();
+        return report("Change Colour", allocated);
+    }
+
+    private static int checkReflectLightScene()
+    {
+        final GridScene scene = BenchmarkScenes.createReflectLightScene(BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE));
+        final ParticleStore store = scene.getParticleStore();
+        final ReflectLightEngine reflectLightEngine = scene.getReflectLightEngine();
+        BenchmarkScenes.warmUp(store, 2f);
+        final OrientationFilter filter = new OrientationFilter();
+        filter.update(0f, 0f, 0L);
+
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            // Rock the device back and forth
+            final float pitch = 30f * (float) Math.sin(frame * 0.05);
+            filter.update(pitch, 0.5f * pitch, (frame + 1) * (long) (BenchmarkScenes.FRAME_SECONDS * 1e9f));
+            reflectLightEngine.setCombinedTilt(filter.getPitch() + filter.getRoll());
+            store.update(BenchmarkScenes.FRAME_SECONDS);
+        }
+        final long allocated = getAllocatedBytes() - before;
+        return report("Reflect Light", allocated);
+    }
+
+    private static int checkParallelUpdate()
+    {
+        // Large enough to be split
+        final ParticleStore store = BenchmarkScenes.createStaticColourScene(BenchmarkScenes.createEmitter("2160p", 16))
+                .getParticleStore();
+        final ParticleUpdateWorkers updateWorkers = new ParticleUpdateWorkers(2);
+        store.setUpdateWorkers(updateWorkers);
+        store.update(BenchmarkScenes.FRAME_SECONDS);
+
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            store.update(BenchmarkScenes.FRAME_SECONDS);
+        }
+        final long allocated = getAllocatedBytes() - before;
+        updateWorkers.shutdown();
+        return report("Parallel update", allocated);
+    }
+
+    private static int checkSimulation()
+    {
+        final GridScene scene = BenchmarkScenes.createColourChangeScene(BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE));
+        final ParticleSimulation simulation = scene.getSimulation();
+        final ColorUploadTracker uploadTracker = new ColorUploadTracker(simulation.getAnimation().getGridTiles());
+
+        // Stepping and packing on this thread, then handing time over to the simulation thread, as the engine's
+        // update thread does, while taking finished states as the GL thread does
+        simulation.advance(BenchmarkScenes.FRAME_SECONDS);
+        findChangedRuns(uploadTracker, simulation.acquireNewRenderState());
+        long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            simulation.advance(BenchmarkScenes.FRAME_SECONDS);
+            findChangedRuns(uploadTracker, simulation.acquireNewRenderState());
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        simulation.start();
+        before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            simulation.advance(BenchmarkScenes.FRAME_SECONDS);
+            findChangedRuns(uploadTracker, simulation.acquireNewRenderState());
+        }
+        allocated += getAllocatedBytes() - before;
+        simulation.stop();
+        scene.release();
+        return report("Simulation", allocated);
+    }
+
+    private static int checkClosedForm()
+    {
+        final GridScene scene = BenchmarkScenes.createClosedFormScene(BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE));
+        final ClosedFormAnimation animation = scene.getClosedFormAnimation();
+        animation.setDensity(0.5f);
+        final ParticleSimulation simulation = scene.getSimulation();
+        final ColorUploadTracker uploadTracker = new ColorUploadTracker(animation.getGridTiles());
+
+        simulation.advance(BenchmarkScenes.FRAME_SECONDS);
+        findChangedRuns(uploadTracker, simulation.acquireNewRenderState());
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            simulation.advance(BenchmarkScenes.FRAME_SECONDS);
+            findChangedRuns(uploadTracker, simulation.acquireNewRenderState());
+        }
+        final long allocated = getAllocatedBytes() - before;
+        scene.release();
+        return report("Lightweight animation", allocated);
+    }
+
+    private static void findChangedRuns(final ColorUploadTracker pUploadTracker, final RenderState pRenderState)
+    {
+        if (pRenderState != null)
+        {
+            pUploadTracker.findChangedRuns(pRenderState.getTileColors(), pRenderState.getFirstVisibleTile(),
+                    pRenderState.getVisibleTilesEnd());
+        }
+    }
+
+    private static int checkFpsOverlay()
+    {
+        final StringBuilder fpsString = new StringBuilder(96);
+        final FrameProfiler frameProfiler = new FrameProfiler();
+        FpsFormatter.format(fpsString, 0f, 0f);
+        FpsFormatter.appendTier(fpsString, 0, PowerGovernor.REASON_HOT);
+        FpsFormatter.appendFrameTimes(fpsString, frameProfiler);
+
+        final long before = getAllocatedBytes();
+        for (int frame = 0; frame < FRAMES; frame++)
+        {
+            frameProfiler.record(FrameProfiler.PHASE_FRAME, frame * 731000L);
+            FpsFormatter.format(fpsString, frame * 0.137f, 24f);
+            FpsFormatter.appendTier(fpsString, frame % 4, PowerGovernor.REASON_HOT);
+            FpsFormatter.appendFrameTimes(fpsString, frameProfiler);
+        }
+        final long allocated = getAllocatedBytes() - before;
+        return report("FPS overlay", allocated);
+    }
+
+    private static long getAllocatedBytes()
+    {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int report(final String pName, final long pAllocatedBytes)
+    {
+        if (pAllocatedBytes > 0)
+        {
+            System.err.println(pName + ": " + pAllocatedBytes + " bytes allocated in " + FRAMES + " frames");
+            return 1;
+        }
+        System.out.println(pName + ": no allocations");
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.efung.glimmer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fade-in and fade-out modifiers over every live particle of a settled store, without spawning or ageing so
+ * that the store stays the same between operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AlphaModifierBenchmark
+{
+    @Param({ "720p", "1080p", "1440p", "2160p" })
+    public String resolution;
+
+    @Param({ "16", "24", "32" })
+    public int dotSize;
+
+    private ParticleStore mStore;
+    private StoreAlphaModifier mFadeIn;
+    private StoreAlphaModifier mFadeOut;
+
+    @Setup
+    public void setUp()
+    {
+        this.mStore = BenchmarkScenes.createStaticColourScene(BenchmarkScenes.createEmitter(this.resolution, this.dotSize))
+                .getParticleStore();
+        final StoreAlphaModifier[] alphaSegments = GridScene.createAlphaSegments();
+        this.mFadeIn = alphaSegments[0];
+        this.mFadeOut = alphaSegments[1];
+    }
+
+    @Benchmark
+    public float[] updateAlphas()
+    {
+        this.mFadeOut.onUpdateParticles(this.mStore, BenchmarkScenes.FRAME_SECONDS);
+        this.mFadeIn.onUpdateParticles(this.mStore, BenchmarkScenes.FRAME_SECONDS);
+        return this.mStore.getAlphas();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.efung.glimmer;
+
+/**
+ * Builds GlimmerLiveWallpaper's scenes through {@link GridScene}, sized for a given screen and dot, with fixed settings
+ * and a fixed seed.
+ */
+public final class BenchmarkScenes
+{
+    public static final float FRAME_SECONDS = 1f / 24f;
+    // Settings of the scenes
+    public static final int STATIC_COLOUR = 0xFF3366CC;
+    public static final float COLOUR_CHANGE_PERIOD = 5f;
+
+    private static final long SEED = 0x5EEDL;
+
+    private BenchmarkScenes()
+    {
+    }
+
+    /**
+     * @param pResolution one of 720p, 1080p, 1440p or 2160p
+     * @return portrait width and height in pixels
+     */
+    public static int[] getScreenSize(final String pResolution)
+    {
+        if ("720p".equals(pResolution))
+        {
+            return new int[] { 720, 1280 };
+        }
+        if ("1080p".equals(pResolution))
+        {
+            return new int[] { 1080, 1920 };
+        }
+        if ("1440p".equals(pResolution))
+        {
+            return new int[] { 1440, 2560 };
+        }
+        if ("2160p".equals(pResolution))
+        {
+            return new int[] { 2160, 3840 };
+        }
+        throw new IllegalArgumentException("Unknown resolution: " + pResolution);
+    }
+
+    public static GridParticleEmitter createEmitter(final String pResolution, final int pDotSize)
+    {
+        final int[] size = getScreenSize(pResolution);
+        return new GridParticleEmitter(size[0] * 0.5f, size[1] * 0.5f, size[0], size[1], pDotSize, pDotSize, false, SEED);
+    }
+
+    /**
+     * Static Colour scene, settled as the wallpaper shows it.
+     */
+    public static GridScene createStaticColourScene(final GridParticleEmitter pEmitter)
+    {
+        return GridScene.buildStaticColour(pEmitter, STATIC_COLOUR, null);
+    }
+
+    /**
+     * Change Colour scene, settled as the wallpaper shows it. Holds its trajectory until released.
+     */
+    public static GridScene createColourChangeScene(final GridParticleEmitter pEmitter)
+    {
+        return GridScene.buildColourChange(pEmitter, COLOUR_CHANGE_PERIOD, null);
+    }
+
+    /**
+     * Reflect Light scene, as new, with the device held flat. Fills within a second, see {@link #warmUp}.
+     */
+    public static GridScene createReflectLightScene(final GridParticleEmitter pEmitter)
+    {
+        return GridScene.buildReflectLight(pEmitter, STATIC_COLOUR, 0f, null);
+    }
+
+    /**
+     * Change Colour scene with Lightweight animation on, at a fixed time instead of the wall clock. Holds its
+     * trajectory until released.
+     */
+    public static GridScene createClosedFormScene(final GridParticleEmitter pEmitter)
+    {
+        final GridScene scene = GridScene.buildClosedFormColourChange(pEmitter, COLOUR_CHANGE_PERIOD);
+        scene.getClosedFormAnimation().setTime(1000.0);
+        return scene;
+    }
+
+    /**
+     * Steps a store on for a while at the frame rate, e.g. until every tile of a Reflect Light scene is filled.
+     */
+    public static void warmUp(final ParticleStore pStore, final float pSeconds)
+    {
+        for (float time = 0f; time < pSeconds; time += FRAME_SECONDS)
+        {
+            pStore.update(FRAME_SECONDS);
+        }
+    }
+}
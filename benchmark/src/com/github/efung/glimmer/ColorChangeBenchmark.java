@@ -0,0 +1,45 @@
+package com.github.efung.glimmer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change Colour mode: one frame of following the colour trajectory, and generating a trajectory at scene build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColorChangeBenchmark
+{
+    private ColorTrajectoryUpdateHandler mColorHandler;
+    private StoreColorInitializer mColorInitializer;
+    private long mSeed;
+
+    @Setup
+    public void setUp()
+    {
+        this.mColorInitializer = new StoreColorInitializer(0xFF3366CC);
+        this.mColorHandler = new ColorTrajectoryUpdateHandler(new ColorTrajectory(0xFF3366CC, 0x5EEDL),
+                this.mColorInitializer, 5f);
+    }
+
+    @Benchmark
+    public int updateFrame()
+    {
+        this.mColorHandler.onUpdate(BenchmarkScenes.FRAME_SECONDS);
+        return this.mColorInitializer.getColor();
+    }
+
+    @Benchmark
+    public ColorTrajectory createTrajectory()
+    {
+        return new ColorTrajectory(0xFF3366CC, this.mSeed++);
+    }
+}
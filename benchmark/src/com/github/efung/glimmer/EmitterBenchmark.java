@@ -0,0 +1,50 @@
+package com.github.efung.glimmer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking the next tile, per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmitterBenchmark
+{
+    @Param({ "720p", "1080p", "1440p", "2160p" })
+    public String resolution;
+
+    @Param({ "16", "24", "32" })
+    public int dotSize;
+
+    private GridParticleEmitter mEmitter;
+    private final float[] mOffset = new float[2];
+
+    @Setup
+    public void setUp()
+    {
+        this.mEmitter = BenchmarkScenes.createEmitter(this.resolution, this.dotSize);
+    }
+
+    @Benchmark
+    public float[] getPositionOffset()
+    {
+        this.mEmitter.getPositionOffset(this.mOffset);
+        return this.mOffset;
+    }
+
+    @Benchmark
+    public float nextTileWithCoordinates()
+    {
+        final int tile = this.mEmitter.nextTile();
+        return this.mEmitter.getTileX(tile) + this.mEmitter.getTileY(tile) + this.mEmitter.getTileRotation(tile);
+    }
+}
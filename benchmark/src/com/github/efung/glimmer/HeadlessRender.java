@@ -0,0 +1,259 @@
+package com.github.efung.glimmer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Renders every scene without a GPU, through {@link SoftwareGridRenderer}, with a fixed seed and a fixed 24 fps clock,
+ * and compares checksums of frames at regular intervals with a golden file. Also reports the time each frame took to
+ * step and to draw, so that frame cost can be compared on any desktop JVM.
+ *
+ * The scenes are those of {@link BenchmarkScenes}, built by {@link GridScene} as the wallpaper builds them, and stepped
+ * through their {@link ParticleSimulation} on the calling thread, as the wallpaper does before its simulation thread
+ * starts.
+ *
+ * Usage: ant golden-check, or HeadlessRender goldenFile [-update] [-images dir]. With -update, the golden file is
+ * rewritten instead of compared. With -images, checked frames are written there as PPM images; frames that don't
+ * match are always written, to the directory given or the working directory.
+ */
+public class HeadlessRender
+{
+    private static final String RESOLUTION = "720p";
+    private static final int DOT_SIZE = 24;
+    private static final int FRAMES = 24 * 10;
+    private static final int CHECK_INTERVAL = 24; // frames between checksums
+
+    public static void main(final String[] pArgs) throws IOException
+    {
+        if (pArgs.length < 1)
+        {
+            System.err.println("Usage: HeadlessRender goldenFile [-update] [-images dir]");
+            System.exit(2);
+        }
+        final File goldenFile = new File(pArgs[0]);
+        boolean update = false;
+        File imageDir = null;
+        for (int i = 1; i < pArgs.length; i++)
+        {
+            if ("-update".equals(pArgs[i]))
+            {
+                update = true;
+            }
+            else if ("-images".equals(pArgs[i]) && i + 1 < pArgs.length)
+            {
+                imageDir = new File(pArgs[++i]);
+                imageDir.mkdirs();
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown argument: " + pArgs[i]);
+            }
+        }
+
+        final Map<String, String> golden = update ? new LinkedHashMap<String, String>() : readGolden(goldenFile);
+        final Map<String, String> actual = new LinkedHashMap<String, String>();
+        int failures = 0;
+        for (int scene = 0; scene < Scene.COUNT; scene++)
+        {
+            final Scene built = new Scene(scene);
+            failures += render(built, golden, actual, update, imageDir);
+            built.mScene.release();
+        }
+
+        if (update)
+        {
+            writeGolden(goldenFile, actual);
+            System.out.println("Wrote " + actual.size() + " checksums to " + goldenFile);
+            return;
+        }
+        if (failures > 0)
+        {
+            System.err.println(failures + " frame(s) differ from " + goldenFile);
+            System.exit(1);
+        }
+        System.out.println("All " + actual.size() + " checked frames match " + goldenFile);
+    }
+
+    private static int render(final Scene pScene, final Map<String, String> pGolden, final Map<String, String> pActual,
+                              final boolean pUpdate, final File pImageDir) throws IOException
+    {
+        final int[] size = BenchmarkScenes.getScreenSize(RESOLUTION);
+        final SoftwareGridRenderer renderer = new SoftwareGridRenderer(pScene.mEmitter, size[0], size[1], DOT_SIZE);
+        final FrameProfiler frameProfiler = new FrameProfiler();
+        final CRC32 crc = new CRC32();
+        int failures = 0;
+
+        for (int frame = 1; frame <= FRAMES; frame++)
+        {
+            final long start = System.nanoTime();
+            pScene.step(frame);
+            final RenderState renderState = pScene.mSimulation.acquireNewRenderState();
+            final long stepped = System.nanoTime();
+            frameProfiler.add(FrameProfiler.PHASE_SIMULATION, stepped - start);
+            // Drawn every frame, even when nothing was published, as the engine does
+            renderer.draw(renderState != null ? renderState : pScene.mSimulation.getRenderState());
+            final long drawn = System.nanoTime();
+            frameProfiler.add(FrameProfiler.PHASE_DRAW, drawn - stepped);
+            frameProfiler.endFrame(drawn - start);
+
+            if (frame % CHECK_INTERVAL != 0)
+            {
+                continue;
+            }
+            final String key = pScene.mName + '\t' + frame;
+            crc.reset();
+            final int[] pixels = renderer.getPixels();
+            for (int i = 0; i < pixels.length; i++)
+            {
+                final int pixel = pixels[i];
+                crc.update(pixel >> 16);
+                crc.update(pixel >> 8);
+                crc.update(pixel);
+            }
+            final String checksum = String.format("%08x", crc.getValue());
+            pActual.put(key, checksum);
+
+            final boolean matches = pUpdate || checksum.equals(pGolden.get(key));
+            if (!matches)
+            {
+                System.err.println(pScene.mName + ", frame " + frame + ": expected " + pGolden.get(key) + ", got " + checksum);
+                failures++;
+            }
+            if (pImageDir != null || !matches)
+            {
+                final File image = new File(pImageDir, pScene.mName.replace(' ', '-').toLowerCase() + "-" + frame + ".ppm");
+                renderer.writePpm(image);
+                if (!matches)
+                {
+                    System.err.println("  written to " + image);
+                }
+            }
+        }
+
+        System.out.println(pScene.mName + ": " + pScene.mEmitter.getGridTiles() + " tiles, per frame"
+                + " step " + formatTimes(frameProfiler, FrameProfiler.PHASE_SIMULATION)
+                + ", draw " + formatTimes(frameProfiler, FrameProfiler.PHASE_DRAW));
+        return failures;
+    }
+
+    private static String formatTimes(final FrameProfiler pFrameProfiler, final int pPhase)
+    {
+        return "mean " + pFrameProfiler.getMeanNanos(pPhase) / 1000 + " us, 95th "
+                + pFrameProfiler.getPercentileNanos(pPhase, 95f) / 1000 + " us, max "
+                + pFrameProfiler.getMaxNanos(pPhase) / 1000 + " us";
+    }
+
+    /**
+     * @return checksums by scene and frame, tab separated as they are in the file. Lines starting with # are comments.
+     */
+    private static Map<String, String> readGolden(final File pFile) throws IOException
+    {
+        final Map<String, String> golden = new LinkedHashMap<String, String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(pFile), "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                final int separator = line.lastIndexOf('\t');
+                if (line.startsWith("#") || separator < 0)
+                {
+                    continue;
+                }
+                golden.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return golden;
+    }
+
+    private static void writeGolden(final File pFile, final Map<String, String> pChecksums) throws IOException
+    {
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8"));
+        try
+        {
+            writer.print("# CRC-32 of the RGB bytes of frames rendered by HeadlessRender, at " + RESOLUTION + " with "
+                    + DOT_SIZE + " px dots.\n");
+            writer.print("# Regenerate after intended changes to what is drawn: ant golden-check -Dgolden.update=true\n");
+            writer.print("# scene\tframe\tchecksum\n");
+            for (final Map.Entry<String, String> entry : pChecksums.entrySet())
+            {
+                writer.print(entry.getKey() + '\t' + entry.getValue() + '\n');
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * One of the wallpaper's scenes, built the same way every time.
+     */
+    private static class Scene
+    {
+        private static final int STATIC_COLOUR = 0;
+        private static final int CHANGE_COLOUR = 1;
+        private static final int REFLECT_LIGHT = 2;
+        private static final int LIGHTWEIGHT = 3;
+        private static final int COUNT = 4;
+
+        private final String mName;
+        private final GridScene mScene;
+        private final GridParticleEmitter mEmitter;
+        private final ParticleSimulation mSimulation;
+        private final ReflectLightEngine mReflectLightEngine;
+
+        private Scene(final int pScene)
+        {
+            final GridParticleEmitter emitter = BenchmarkScenes.createEmitter(RESOLUTION, DOT_SIZE);
+            switch (pScene)
+            {
+                case STATIC_COLOUR:
+                    this.mName = "Static Colour";
+                    this.mScene = BenchmarkScenes.createStaticColourScene(emitter);
+                    break;
+                case CHANGE_COLOUR:
+                    this.mName = "Change Colour";
+                    this.mScene = BenchmarkScenes.createColourChangeScene(emitter);
+                    break;
+                case REFLECT_LIGHT:
+                    this.mName = "Reflect Light";
+                    this.mScene = BenchmarkScenes.createReflectLightScene(emitter);
+                    break;
+                case LIGHTWEIGHT:
+                    this.mName = "Lightweight";
+                    this.mScene = BenchmarkScenes.createClosedFormScene(emitter);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown scene: " + pScene);
+            }
+            this.mEmitter = emitter;
+            this.mSimulation = this.mScene.getSimulation();
+            this.mReflectLightEngine = this.mScene.getReflectLightEngine();
+        }
+
+        private void step(final int pFrame)
+        {
+            if (this.mReflectLightEngine != null)
+            {
+                // Tilted back and forth, 60 degrees each way over 80 frames
+                final int phase = (pFrame * 3) % 240;
+                this.mReflectLightEngine.setCombinedTilt(phase < 120 ? phase - 60 : 180 - phase);
+            }
+            this.mSimulation.advance(BenchmarkScenes.FRAME_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.efung.glimmer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole frame of the Static Colour and Change Colour scenes once they have settled: spawning, both alpha
+ * modifiers, then ageing and expiry. One operation is one frame. With fused=false, the stages run one by one
+ * instead of as a {@link FusedParticlePipeline}. With workers above 0, stores over
+ * {@link ParticleUpdateWorkers#PARALLEL_THRESHOLD} live particles share the update with that many worker threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleStoreBenchmark
+{
+    @Param({ "720p", "1080p", "1440p", "2160p" })
+    public String resolution;
+
+    @Param({ "16", "24", "32" })
+    public int dotSize;
+
+    @Param({ "true", "false" })
+    public boolean fused;
+
+    @Param({ "0", "3" })
+    public int workers;
+
+    private ParticleStore mStore;
+    private ParticleUpdateWorkers mUpdateWorkers;
+
+    @Setup
+    public void setUp()
+    {
+        this.mStore = BenchmarkScenes.createStaticColourScene(BenchmarkScenes.createEmitter(this.resolution, this.dotSize))
+                .getParticleStore();
+        this.mStore.setPipelineEnabled(this.fused);
+        if (this.workers > 0)
+        {
+            this.mUpdateWorkers = new ParticleUpdateWorkers(this.workers);
+            this.mStore.setUpdateWorkers(this.mUpdateWorkers);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (this.mUpdateWorkers != null)
+        {
+            this.mUpdateWorkers.shutdown();
+            this.mUpdateWorkers = null;
+        }
+    }
+
+    @Benchmark
+    public int updateFrame()
+    {
+        this.mStore.update(BenchmarkScenes.FRAME_SECONDS);
+        return this.mStore.getParticlesAlive();
+    }
+
+    @Benchmark
+    public float determineCurrentRate()
+    {
+        return this.mStore.determineCurrentRate();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.efung.glimmer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflect Light while the device is being tilted back and forth, so that every frame has a new tilt, plus the
+ * unquantized alpha function on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReflectLightBenchmark
+{
+    @Param({ "720p", "1080p", "1440p", "2160p" })
+    public String resolution;
+
+    @Param({ "16", "24", "32" })
+    public int dotSize;
+
+    private ParticleStore mStore;
+    private ReflectLightEngine mReflectLightEngine;
+    private float mTilt;
+    private float mTiltStep = 1.5f;
+
+    @Setup
+    public void setUp()
+    {
+        final GridScene scene = BenchmarkScenes.createReflectLightScene(BenchmarkScenes.createEmitter(this.resolution, this.dotSize));
+        this.mStore = scene.getParticleStore();
+        this.mReflectLightEngine = scene.getReflectLightEngine();
+        BenchmarkScenes.warmUp(this.mStore, 2f);
+    }
+
+    @Benchmark
+    public int updateFrame()
+    {
+        this.mTilt += this.mTiltStep;
+        if (this.mTilt > 60f || this.mTilt < -60f)
+        {
+            this.mTiltStep = -this.mTiltStep;
+        }
+        this.mReflectLightEngine.setCombinedTilt(this.mTilt);
+        this.mStore.update(BenchmarkScenes.FRAME_SECONDS);
+        return this.mStore.getParticlesAlive();
+    }
+
+    @Benchmark
+    public float getAlphaFromRotation()
+    {
+        this.mTilt += 0.37f;
+        if (this.mTilt > 90f)
+        {
+            this.mTilt = -90f;
+        }
+        return ReflectLightEngine.getAlphaFromRotation(this.mTilt * 0.5f, this.mTilt);
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.efung.glimmer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws what StaticGridRenderer draws into an array of pixels instead of through GL, so that scenes can be
+ * rendered on a machine without a GPU: the same rotated quad per tile, the same premultiplied tile colours multiplied
+ * by the dot's texels, and the same blend (ONE, ONE_MINUS_SRC_ALPHA) over black.
+ *
+ * Texels are sampled at pixel centres without filtering, and all arithmetic is integer apart from finding which texel
+ * a pixel falls on, so the same frame always gives the same pixels. Those are close to what a device shows, not equal.
+ */
+public class SoftwareGridRenderer
+{
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final int BACKGROUND = 0xFF000000;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels; // ARGB, rows from the top
+    private final IntBuffer mPixelBuffer;
+
+    private final int mDotSize;
+    private final int[] mDotTexels; // Grey level of each texel, as the atlas has no alpha
+
+    private final int mGridTiles;
+    private final float[] mTileCenterX;
+    private final float[] mTileCenterY;
+    private final float[] mTileCos;
+    private final float[] mTileSin;
+
+    /**
+     * @param pDotSize size of each tile's quad and of its dot texture, in pixels
+     */
+    public SoftwareGridRenderer(final ITileEmitter pEmitter, final int pWidth, final int pHeight, final int pDotSize)
+    {
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+        this.mPixels = new int[pWidth * pHeight];
+        this.mPixelBuffer = IntBuffer.wrap(this.mPixels);
+
+        this.mDotSize = pDotSize;
+        this.mDotTexels = new int[pDotSize * pDotSize];
+        DotBitmapGenerator.generate(pDotSize, this.mDotTexels, 0, pDotSize);
+        for (int i = 0; i < this.mDotTexels.length; i++)
+        {
+            this.mDotTexels[i] &= 0xFF;
+        }
+
+        this.mGridTiles = pEmitter.getGridTiles();
+        this.mTileCenterX = new float[this.mGridTiles];
+        this.mTileCenterY = new float[this.mGridTiles];
+        this.mTileCos = new float[this.mGridTiles];
+        this.mTileSin = new float[this.mGridTiles];
+        final float halfSize = pDotSize * 0.5f;
+        for (int tile = 0; tile < this.mGridTiles; tile++)
+        {
+            // As GridGeometry lays them out, but with StrictMath so that every JVM agrees
+            final double rotation = StrictMath.toRadians(pEmitter.getTileRotation(tile));
+            this.mTileCenterX[tile] = pEmitter.getTileX(tile) + halfSize;
+            this.mTileCenterY[tile] = pEmitter.getTileY(tile) + halfSize;
+            this.mTileCos[tile] = (float) StrictMath.cos(rotation);
+            this.mTileSin[tile] = (float) StrictMath.sin(rotation);
+        }
+    }
+
+    public int getWidth()
+    {
+        return this.mWidth;
+    }
+
+    public int getHeight()
+    {
+        return this.mHeight;
+    }
+
+    /**
+     * @return the pixels of the last frame drawn, as ARGB
+     */
+    public int[] getPixels()
+    {
+        return this.mPixels;
+    }
+
+    /**
+     * @return a view of {@link #getPixels()}, with a position of its own
+     */
+    public IntBuffer getPixelBuffer()
+    {
+        return this.mPixelBuffer.duplicate();
+    }
+
+    /**
+     * Clears to black and draws the visible tiles of the render state, in tile order as the GL renderer does.
+     */
+    public void draw(final RenderState pRenderState)
+    {
+        Arrays.fill(this.mPixels, BACKGROUND);
+
+        final int[] tileColors = pRenderState.getTileColors();
+        final int tilesEnd = Math.min(pRenderState.getVisibleTilesEnd(), this.mGridTiles);
+        for (int tile = pRenderState.getFirstVisibleTile(); tile < tilesEnd; tile++)
+        {
+            final int color = tileColors[tile];
+            if (color != 0)
+            {
+                drawTile(tile, color);
+            }
+        }
+    }
+
+    private void drawTile(final int pTile, final int pColor)
+    {
+        // The colour stream is bytes R, G, B, A in memory, premultiplied (see RenderState.packColor)
+        final int red;
+        final int green;
+        final int blue;
+        final int alpha;
+        if (LITTLE_ENDIAN)
+        {
+            red = pColor & 0xFF;
+            green = (pColor >> 8) & 0xFF;
+            blue = (pColor >> 16) & 0xFF;
+            alpha = pColor >>> 24;
+        }
+        else
+        {
+            red = pColor >>> 24;
+            green = (pColor >> 16) & 0xFF;
+            blue = (pColor >> 8) & 0xFF;
+            alpha = pColor & 0xFF;
+        }
+
+        final int dotSize = this.mDotSize;
+        final float halfSize = dotSize * 0.5f;
+        final float centerX = this.mTileCenterX[pTile];
+        final float centerY = this.mTileCenterY[pTile];
+        final float cos = this.mTileCos[pTile];
+        final float sin = this.mTileSin[pTile];
+
+        // Bounding box of the quad at any rotation
+        final float reach = halfSize * (Math.abs(cos) + Math.abs(sin));
+        final int left = Math.max(0, (int) Math.floor(centerX - reach));
+        final int right = Math.min(this.mWidth, (int) Math.ceil(centerX + reach));
+        final int top = Math.max(0, (int) Math.floor(centerY - reach));
+        final int bottom = Math.min(this.mHeight, (int) Math.ceil(centerY + reach));
+
+        final int[] pixels = this.mPixels;
+        final int[] dotTexels = this.mDotTexels;
+        final int inverseAlpha = 255 - alpha;
+        for (int y = top; y < bottom; y++)
+        {
+            final float dy = y + 0.5f - centerY;
+            int pixel = y * this.mWidth + left;
+            for (int x = left; x < right; x++, pixel++)
+            {
+                // Back into the quad's own frame, undoing GridGeometry's rotation
+                final float dx = x + 0.5f - centerX;
+                final float u = dx * cos + dy * sin + halfSize;
+                final float v = dy * cos - dx * sin + halfSize;
+                if (u < 0f || v < 0f || u >= dotSize || v >= dotSize)
+                {
+                    continue;
+                }
+
+                final int texel = dotTexels[(int) v * dotSize + (int) u];
+                final int destination = pixels[pixel];
+                pixels[pixel] = 0xFF000000
+                        | blend(red, texel, (destination >> 16) & 0xFF, inverseAlpha) << 16
+                        | blend(green, texel, (destination >> 8) & 0xFF, inverseAlpha) << 8
+                        | blend(blue, texel, destination & 0xFF, inverseAlpha);
+            }
+        }
+    }
+
+    private static int blend(final int pSource, final int pTexel, final int pDestination, final int pInverseAlpha)
+    {
+        return Math.min(255, (pSource * pTexel + 127) / 255 + (pDestination * pInverseAlpha + 127) / 255);
+    }
+
+    /**
+     * Writes the last frame drawn as a binary PPM, which most image viewers open.
+     */
+    public void writePpm(final File pFile) throws IOException
+    {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(pFile));
+        try
+        {
+            out.write(("P6\n" + this.mWidth + " " + this.mHeight + "\n255\n").getBytes("US-ASCII"));
+            for (int i = 0; i < this.mPixels.length; i++)
+            {
+                final int pixel = this.mPixels[i];
+                out.write(pixel >> 16);
+                out.write(pixel >> 8);
+                out.write(pixel);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.efung.glimmer;
+
+import org.andengine.engine.Engine;
+import org.andengine.engine.options.EngineOptions;
+import org.andengine.opengl.util.GLState;
+import org.andengine.util.time.TimeConstants;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Like LimitedFPSEngine, but instead of a fixed frame rate it chooses the next frame's length from how fast the
+ * scene is visibly changing, as reported by {@link IVisualChangeSource}s. During slow fades it drops to a few frames
+ * per second, and when nothing changes at all it waits (up to the minimum frame rate) until
+ * {@link #requestFrame()} is called, e.g. on sensor motion.
+ */
+public class AdaptiveFPSEngine extends Engine
+{
+    // Largest change in brightness between two frames that still looks smooth
+    private static final float PERCEPTIBLE_STEP = 1f / 32f;
+
+    // How long it takes to settle to a lower frame rate. Higher rates are applied immediately.
+    private static final float RAMP_DOWN_SECONDS = 1.0f;
+
+    private final float mMinFramesPerSecond;
+    private volatile float mMaxFramesPerSecond;
+    private final CopyOnWriteArrayList<IVisualChangeSource> mVisualChangeSources = new CopyOnWriteArrayList<IVisualChangeSource>();
+
+    private final Object mFrameLock = new Object();
+    private boolean mFrameRequested;
+
+    private float mEffectiveFramesPerSecond;
+
+    private volatile FrameProfiler mFrameProfiler;
+    private volatile PowerGovernor mPowerGovernor;
+    private long mFrameStartNanos; // Set on the update thread, read on the GL thread once the update is done
+
+    public AdaptiveFPSEngine(final EngineOptions pEngineOptions, final int pMinFramesPerSecond, final int pMaxFramesPerSecond)
+    {
+        super(pEngineOptions);
+        this.mMinFramesPerSecond = pMinFramesPerSecond;
+        this.mMaxFramesPerSecond = pMaxFramesPerSecond;
+        this.mEffectiveFramesPerSecond = pMaxFramesPerSecond;
+    }
+
+    public void addVisualChangeSource(final IVisualChangeSource pVisualChangeSource)
+    {
+        this.mVisualChangeSources.add(pVisualChangeSource);
+    }
+
+    public void removeVisualChangeSource(final IVisualChangeSource pVisualChangeSource)
+    {
+        this.mVisualChangeSources.remove(pVisualChangeSource);
+    }
+
+    public void clearVisualChangeSources()
+    {
+        this.mVisualChangeSources.clear();
+    }
+
+    public void setMaxFramesPerSecond(final float pMaxFramesPerSecond)
+    {
+        this.mMaxFramesPerSecond = pMaxFramesPerSecond;
+    }
+
+    /**
+     * @return the frame rate currently aimed for, which is what will be rendered unless frames take too long.
+     */
+    public float getEffectiveFramesPerSecond()
+    {
+        return this.mEffectiveFramesPerSecond;
+    }
+
+    /**
+     * @param pFrameProfiler records how long each frame takes from the start of its update to the end of its draw,
+     *                       leaving out the wait before it. Null to stop.
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+    }
+
+    /**
+     * @param pPowerGovernor is told how long each frame takes, measured as for {@link #setFrameProfiler}. Null to stop.
+     */
+    public void setPowerGovernor(final PowerGovernor pPowerGovernor)
+    {
+        this.mPowerGovernor = pPowerGovernor;
+    }
+
+    /**
+     * Ends the current wait for the next frame, and makes the following frame run at full rate. Can be called from
+     * any thread.
+     */
+    public void requestFrame()
+    {
+        synchronized (this.mFrameLock)
+        {
+            this.mFrameRequested = true;
+            this.mFrameLock.notify();
+        }
+    }
+
+    @Override
+    public void onUpdate(final long pNanosecondsElapsed) throws InterruptedException
+    {
+        final boolean frameRequested;
+        synchronized (this.mFrameLock)
+        {
+            frameRequested = this.mFrameRequested;
+            this.mFrameRequested = false;
+        }
+
+        updateEffectiveFramesPerSecond(pNanosecondsElapsed / (float) TimeConstants.NANOSECONDS_PER_SECOND, frameRequested);
+
+        final long preferredFrameLengthNanoseconds = (long) (TimeConstants.NANOSECONDS_PER_SECOND / this.mEffectiveFramesPerSecond);
+        final long deltaFrameLengthNanoseconds = preferredFrameLengthNanoseconds - pNanosecondsElapsed;
+
+        if (deltaFrameLengthNanoseconds <= 0)
+        {
+            this.mFrameStartNanos = System.nanoTime();
+            super.onUpdate(pNanosecondsElapsed);
+        }
+        else
+        {
+            final long waitStart = System.nanoTime();
+            synchronized (this.mFrameLock)
+            {
+                if (!this.mFrameRequested)
+                {
+                    this.mFrameLock.wait(deltaFrameLengthNanoseconds / TimeConstants.NANOSECONDS_PER_MILLISECOND,
+                            (int) (deltaFrameLengthNanoseconds % TimeConstants.NANOSECONDS_PER_MILLISECOND));
+                }
+            }
+            this.mFrameStartNanos = System.nanoTime();
+            super.onUpdate(pNanosecondsElapsed + Math.min(deltaFrameLengthNanoseconds, this.mFrameStartNanos - waitStart));
+        }
+    }
+
+    @Override
+    public void onDrawFrame(final GLState pGLState) throws InterruptedException
+    {
+        super.onDrawFrame(pGLState);
+
+        if (this.mFrameStartNanos == 0)
+        {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long frameNanos = now - this.mFrameStartNanos;
+        this.mFrameStartNanos = 0;
+
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        if (frameProfiler != null)
+        {
+            frameProfiler.endFrame(frameNanos);
+        }
+        final PowerGovernor powerGovernor = this.mPowerGovernor;
+        if (powerGovernor != null)
+        {
+            powerGovernor.onFrame(frameNanos, now);
+        }
+    }
+
+    private void updateEffectiveFramesPerSecond(final float pSecondsElapsed, final boolean pFrameRequested)
+    {
+        final float maxFramesPerSecond = this.mMaxFramesPerSecond;
+        float desiredFramesPerSecond;
+        if (pFrameRequested)
+        {
+            desiredFramesPerSecond = maxFramesPerSecond;
+        }
+        else
+        {
+            float visualChangeRate = 0f;
+            final CopyOnWriteArrayList<IVisualChangeSource> sources = this.mVisualChangeSources;
+            for (int i = sources.size() - 1; i >= 0; i--)
+            {
+                visualChangeRate = Math.max(visualChangeRate, sources.get(i).getVisualChangeRate());
+            }
+            desiredFramesPerSecond = visualChangeRate / PERCEPTIBLE_STEP;
+        }
+        desiredFramesPerSecond = Math.max(this.mMinFramesPerSecond, Math.min(maxFramesPerSecond, desiredFramesPerSecond));
+
+        if (desiredFramesPerSecond >= this.mEffectiveFramesPerSecond)
+        {
+            this.mEffectiveFramesPerSecond = desiredFramesPerSecond;
+        }
+        else
+        {
+            this.mEffectiveFramesPerSecond += (desiredFramesPerSecond - this.mEffectiveFramesPerSecond) * Math.min(1f, pSecondsElapsed / RAMP_DOWN_SECONDS);
+        }
+    }
+}
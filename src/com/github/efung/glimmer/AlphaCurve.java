@@ -0,0 +1,109 @@
+package com.github.efung.glimmer;
+
+/**
+ * Alpha as a function of particle age, baked into a lookup table from a set of linear segments, e.g. the
+ * {@link StoreAlphaModifier}s of a scene.
+ *
+ * Where segments overlap, the earlier one wins, as it is the last to be applied by ParticleStore's modifier loop.
+ * Between and after segments the last alpha reached is held, and before the first one its starting alpha is used.
+ */
+public class AlphaCurve
+{
+    public static final int SAMPLES = 512;
+
+    private final float[] mSamples = new float[SAMPLES];
+    private final float mSamplesPerSecond;
+    private final boolean mConstant;
+
+    public AlphaCurve(final StoreAlphaModifier[] pSegments)
+    {
+        float duration = 0f;
+        for (int i = 0; i < pSegments.length; i++)
+        {
+            duration = Math.max(duration, pSegments[i].getToTime());
+        }
+        this.mSamplesPerSecond = duration > 0f ? (SAMPLES - 1) / duration : 0f;
+
+        boolean constant = true;
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            this.mSamples[i] = evaluate(pSegments, duration > 0f ? i / this.mSamplesPerSecond : 0f);
+            constant &= this.mSamples[i] == this.mSamples[0];
+        }
+        this.mConstant = constant;
+    }
+
+    /**
+     * @return true if alpha never changes with age, in which case there is nothing to update.
+     */
+    public boolean isConstant()
+    {
+        return this.mConstant;
+    }
+
+    public float getAlpha(final float pAge)
+    {
+        return getSampleAlpha(getSample(pAge));
+    }
+
+    /**
+     * @return the sample {@link #getAlpha} reads for the age, from 0 up to SAMPLES - 1
+     */
+    public int getSample(final float pAge)
+    {
+        final int sample = (int) (pAge * this.mSamplesPerSecond + 0.5f);
+        return sample < SAMPLES ? sample : SAMPLES - 1;
+    }
+
+    public float getSampleAlpha(final int pSample)
+    {
+        return this.mSamples[pSample];
+    }
+
+    /**
+     * @return the age a sample was taken at
+     */
+    public float getSampleAge(final int pSample)
+    {
+        return this.mSamplesPerSecond > 0f ? pSample / this.mSamplesPerSecond : 0f;
+    }
+
+    private static float evaluate(final StoreAlphaModifier[] pSegments, final float pAge)
+    {
+        for (int i = 0; i < pSegments.length; i++)
+        {
+            final StoreAlphaModifier segment = pSegments[i];
+            if (pAge >= segment.getFromTime() && pAge <= segment.getToTime())
+            {
+                final float span = segment.getToTime() - segment.getFromTime();
+                final float progress = span > 0f ? (pAge - segment.getFromTime()) / span : 1f;
+                return segment.getFromAlpha() + progress * (segment.getToAlpha() - segment.getFromAlpha());
+            }
+        }
+
+        // Not within any segment: hold the end of the latest segment already passed, or the start of the first one
+        StoreAlphaModifier held = null;
+        for (int i = 0; i < pSegments.length; i++)
+        {
+            final StoreAlphaModifier segment = pSegments[i];
+            if (segment.getToTime() < pAge && (held == null || segment.getToTime() > held.getToTime()))
+            {
+                held = segment;
+            }
+        }
+        if (held != null)
+        {
+            return held.getToAlpha();
+        }
+
+        StoreAlphaModifier first = null;
+        for (int i = 0; i < pSegments.length; i++)
+        {
+            if (first == null || pSegments[i].getFromTime() < first.getFromTime())
+            {
+                first = pSegments[i];
+            }
+        }
+        return first != null ? first.getFromAlpha() : 1f;
+    }
+}
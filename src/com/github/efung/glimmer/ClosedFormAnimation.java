@@ -0,0 +1,304 @@
+package com.github.efung.glimmer;
+
+/**
+ * Works out every tile's colour straight from the time, for scenes in which a dot's looks only depend on how long
+ * ago it appeared: Static Colour and Change Colour. No particles exist; only each tile's hashes are kept, worked out
+ * once.
+ *
+ * Time is cut into epochs, one dot's lifetime long, which start at a different point for each tile, chosen by a hash
+ * of the seed and the tile. In each epoch a tile is lit or not, again by a hash, so that on average the given
+ * occupancy of tiles is lit, scaled by the density. A lit tile takes its alpha from the alpha curve at its age within
+ * the epoch, and its colour from the time the epoch began, rounded to a grid fine enough not to show. Both only
+ * depend on the age, so each update packs them once per sample of the alpha curve, and a lit tile only looks its
+ * sample up. Dot rotations are a hash of the tile already (see {@link GridParticleEmitter#getTileRotation}).
+ *
+ * As nothing depends on earlier frames, the animation can jump to any time: a long frame costs the same as a short
+ * one, and resuming doesn't need to catch up.
+ */
+public class ClosedFormAnimation implements ITileAnimation
+{
+    // Colours by the time a dot appeared are sampled this often, once per update
+    private static final float COLOR_SAMPLES_PER_SECOND = 8f;
+
+    private final int mGridTiles;
+    private final float[] mTilePhases; // Where each tile's epochs start, as a fraction of an epoch
+    private final int[] mTileLitSeeds;
+    private final float mLifetime;
+    private final float mOccupancy;
+    private final AlphaCurve mAlphaCurve;
+    private final float mAlphaChangeRate;
+
+    private double mTime; // Seconds
+    private volatile float mLitFraction; // Occupancy times density. May be set from any thread.
+
+    private int mColor; // ARGB packed, used while there is no trajectory
+    private ColorTrajectory mColorTrajectory;
+    private final int[] mColorSamples; // Colours at the sample times before the current one, latest first
+    private final int[] mPackedColors = new int[AlphaCurve.SAMPLES]; // By sample of the alpha curve
+    private boolean mPackedColorsValid; // Only kept while the colour is static
+    private float mSecondsPerKeyframe;
+    // The trajectory is at this position, in keyframes, at this time. Moved whenever the speed changes.
+    private double mColorAnchorTime;
+    private double mColorAnchorPosition;
+
+    private int mFirstVisibleTile;
+    private int mVisibleTilesEnd;
+    private boolean mModified = true;
+    private FrameProfiler mFrameProfiler;
+    private boolean mProfiledOutsideFrames;
+
+    /**
+     * @param pLifetime      how long a dot is lit, and so how long each epoch is
+     * @param pOccupancy     the fraction of tiles lit at full density, e.g. what a simulated scene settles at (see
+     *                       {@link ParticleStore#getSteadyStateOccupancy}), so that both look alike
+     * @param pAlphaSegments alpha over a dot's age, as for a {@link ParticleStore}
+     */
+    public ClosedFormAnimation(final int pGridTiles, final long pSeed, final float pLifetime, final float pOccupancy,
+                               final StoreAlphaModifier[] pAlphaSegments)
+    {
+        this.mGridTiles = pGridTiles;
+        this.mTilePhases = new float[pGridTiles];
+        this.mTileLitSeeds = new int[pGridTiles];
+        final int phaseSeed = (int) (pSeed ^ (pSeed >>> 32)) ^ 0x50484153;
+        final int litSeed = TileHash.hash(phaseSeed, 1);
+        for (int tile = 0; tile < pGridTiles; tile++)
+        {
+            this.mTilePhases[tile] = TileHash.unit(phaseSeed, tile);
+            this.mTileLitSeeds[tile] = TileHash.hash(litSeed, tile);
+        }
+        this.mLifetime = pLifetime;
+        this.mOccupancy = Math.max(0f, Math.min(1f, pOccupancy));
+        this.mLitFraction = this.mOccupancy;
+        this.mColorSamples = new int[(int) Math.ceil(pLifetime * COLOR_SAMPLES_PER_SECOND) + 2];
+        this.mAlphaCurve = new AlphaCurve(pAlphaSegments);
+        this.mVisibleTilesEnd = pGridTiles;
+
+        float alphaChangeRate = 0f;
+        for (int i = 0; i < pAlphaSegments.length; i++)
+        {
+            alphaChangeRate = Math.max(alphaChangeRate, pAlphaSegments[i].getVisualChangeRate());
+        }
+        this.mAlphaChangeRate = alphaChangeRate;
+    }
+
+    @Override
+    public int getGridTiles()
+    {
+        return this.mGridTiles;
+    }
+
+    public double getTime()
+    {
+        return this.mTime;
+    }
+
+    /**
+     * Jumps to any time, e.g. the wall clock's, in seconds. Only while the simulation is stopped.
+     */
+    public void setTime(final double pTime)
+    {
+        this.mTime = pTime;
+        this.mModified = true;
+    }
+
+    /**
+     * @param pDensity how much of the occupancy is lit, from 0 to 1, as a particle limit is a fraction of the maximum.
+     *                 Can be called from any thread, and takes effect with the next update.
+     */
+    public void setDensity(final float pDensity)
+    {
+        this.mLitFraction = this.mOccupancy * Math.max(0f, Math.min(1f, pDensity));
+    }
+
+    /**
+     * Colours every dot the same. Only while the simulation is stopped.
+     */
+    public void setColor(final int pColorARGB)
+    {
+        this.mColor = pColorARGB;
+        this.mColorTrajectory = null;
+        this.mPackedColorsValid = false;
+        this.mModified = true;
+    }
+
+    /**
+     * Colours each dot by the time it appeared, moving along the trajectory one keyframe per period. Only while the
+     * simulation is stopped.
+     */
+    public void setColorTrajectory(final ColorTrajectory pColorTrajectory, final float pSecondsPerKeyframe)
+    {
+        this.mColorTrajectory = pColorTrajectory;
+        this.mSecondsPerKeyframe = pSecondsPerKeyframe;
+        this.mColorAnchorTime = 0.0;
+        this.mColorAnchorPosition = 0.0;
+        this.mModified = true;
+    }
+
+    /**
+     * Changes how long each keyframe lasts, carrying on from the current colour. Only while the simulation is
+     * stopped.
+     */
+    public void setSecondsPerKeyframe(final float pSecondsPerKeyframe)
+    {
+        if (this.mColorTrajectory != null)
+        {
+            this.mColorAnchorPosition = getColorPosition(this.mTime);
+            this.mColorAnchorTime = this.mTime;
+        }
+        this.mSecondsPerKeyframe = pSecondsPerKeyframe;
+        this.mModified = true;
+    }
+
+    @Override
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd)
+    {
+        if (pFirstTile != this.mFirstVisibleTile || pTilesEnd != this.mVisibleTilesEnd)
+        {
+            this.mFirstVisibleTile = pFirstTile;
+            this.mVisibleTilesEnd = pTilesEnd;
+            this.mModified = true;
+        }
+    }
+
+    @Override
+    public void update(final float pSecondsElapsed)
+    {
+        if (pSecondsElapsed > 0f)
+        {
+            this.mTime += pSecondsElapsed;
+            this.mModified = true;
+        }
+    }
+
+    @Override
+    public boolean isModified()
+    {
+        return this.mModified;
+    }
+
+    @Override
+    public void clearModified()
+    {
+        this.mModified = false;
+    }
+
+    /**
+     * @return how fast alpha ramps, or 0 if no tile is lit
+     */
+    @Override
+    public float getVisualChangeRate()
+    {
+        return this.mLitFraction > 0f ? this.mAlphaChangeRate : 0f;
+    }
+
+    @Override
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler, final boolean pOutsideFrames)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+        this.mProfiledOutsideFrames = pOutsideFrames;
+    }
+
+    @Override
+    public void pack(final RenderState pRenderState)
+    {
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        final long start = frameProfiler != null ? System.nanoTime() : 0;
+
+        final int[] tileColors = pRenderState.getTileColors();
+        final float[] tilePhases = this.mTilePhases;
+        final int[] tileLitSeeds = this.mTileLitSeeds;
+        final AlphaCurve alphaCurve = this.mAlphaCurve;
+        final float lifetime = this.mLifetime;
+        // Lit if the top 24 bits of the tile's hash for the epoch are below this, as TileHash.unit() < lit fraction
+        final int litThreshold = (int) Math.ceil(this.mLitFraction * (1 << 24));
+
+        // Only the part of the time within the current epoch needs to be precise, so each tile works in float from it
+        final double epochs = this.mTime / lifetime;
+        final double baseEpoch = Math.floor(epochs);
+        final float epochProgress = (float) (epochs - baseEpoch);
+        final int epoch = (int) (long) baseEpoch;
+
+        final int[] packedColors = this.mPackedColors;
+        if (this.mColorTrajectory != null || !this.mPackedColorsValid)
+        {
+            packColors();
+        }
+
+        for (int tile = this.mFirstVisibleTile; tile < this.mVisibleTilesEnd; tile++)
+        {
+            float progress = epochProgress + tilePhases[tile];
+            int tileEpoch = epoch;
+            if (progress >= 1f)
+            {
+                progress -= 1f;
+                tileEpoch++;
+            }
+            // All ones if lit, else 0. Which tiles are lit is random, so a branch would often be mispredicted.
+            final int litMask = ((TileHash.hash(tileLitSeeds[tile], tileEpoch) >>> 8) - litThreshold) >> 31;
+            tileColors[tile] = packedColors[alphaCurve.getSample(progress * lifetime)] & litMask;
+        }
+        pRenderState.setVisibleTiles(this.mFirstVisibleTile, this.mVisibleTilesEnd);
+
+        if (frameProfiler != null)
+        {
+            final long nanos = System.nanoTime() - start;
+            if (this.mProfiledOutsideFrames)
+            {
+                frameProfiler.record(FrameProfiler.PHASE_UPDATE, nanos);
+            }
+            else
+            {
+                frameProfiler.add(FrameProfiler.PHASE_UPDATE, nanos);
+            }
+        }
+    }
+
+    /**
+     * Works out the packed colour of a dot at each sample of the alpha curve, given the current time.
+     */
+    private void packColors()
+    {
+        final AlphaCurve alphaCurve = this.mAlphaCurve;
+        final int[] packedColors = this.mPackedColors;
+        final ColorTrajectory colorTrajectory = this.mColorTrajectory;
+        if (colorTrajectory == null)
+        {
+            for (int sample = 0; sample < AlphaCurve.SAMPLES; sample++)
+            {
+                packedColors[sample] = RenderState.packColor(this.mColor, alphaCurve.getSampleAlpha(sample));
+            }
+            this.mPackedColorsValid = true;
+            return;
+        }
+
+        // Sampled on a grid fixed in time, so that a dot's colour stays the same from one update to the next
+        final int[] colorSamples = this.mColorSamples;
+        final double sampleTime = Math.floor(this.mTime * COLOR_SAMPLES_PER_SECOND) / COLOR_SAMPLES_PER_SECOND;
+        for (int i = 0; i < colorSamples.length; i++)
+        {
+            colorSamples[i] = colorTrajectory.getColor(
+                    (float) getColorPosition(sampleTime - i / (double) COLOR_SAMPLES_PER_SECOND));
+        }
+        final float sinceSample = (float) (this.mTime - sampleTime);
+        for (int sample = 0; sample < AlphaCurve.SAMPLES; sample++)
+        {
+            // The colour sample at or before the time a dot of this age appeared
+            final int colorSample = (int) Math.ceil(
+                    (alphaCurve.getSampleAge(sample) - sinceSample) * COLOR_SAMPLES_PER_SECOND);
+            final int color = colorSamples[Math.max(0, Math.min(colorSamples.length - 1, colorSample))];
+            packedColors[sample] = RenderState.packColor(color, alphaCurve.getSampleAlpha(sample));
+        }
+    }
+
+    /**
+     * @return the trajectory's position at the given time, in keyframes, wrapped to one loop so that it keeps its
+     * precision as a float
+     */
+    private double getColorPosition(final double pTime)
+    {
+        final double position = this.mColorAnchorPosition + (pTime - this.mColorAnchorTime) / this.mSecondsPerKeyframe;
+        final double keyframes = (double) this.mColorTrajectory.getLength() / ColorTrajectory.STEPS_PER_KEYFRAME;
+        final double wrapped = position % keyframes;
+        return wrapped < 0.0 ? wrapped + keyframes : wrapped;
+    }
+}
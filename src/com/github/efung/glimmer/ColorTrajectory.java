@@ -0,0 +1,105 @@
+package com.github.efung.glimmer;
+
+import java.util.Random;
+
+/**
+ * A looping path through the colours of Change Colour mode, generated up front from a seed and baked into a
+ * gradient of packed ARGB colours.
+ *
+ * Keyframes are produced by the same random walk as before: a hue step of 10 to 30 degrees either way, and
+ * saturation and value nudged within [0.4, 0.7]. Between keyframes the gradient is interpolated in HSV, taking the
+ * short way around the hue circle, and the last keyframe leads back into the first so the path loops without a jump.
+ *
+ * Unlike the walk it replaces, the path repeats. There are enough keyframes that it takes over an hour to come round
+ * at the shortest period and over three at the default, at the cost of a 128 KB gradient, shared by every scene
+ * built from the same seed, and a few milliseconds on a desktop JVM to bake it.
+ */
+public class ColorTrajectory
+{
+    public static final int KEYFRAMES = 2048;
+    public static final int STEPS_PER_KEYFRAME = 16;
+
+    private final int[] mGradient = new int[KEYFRAMES * STEPS_PER_KEYFRAME];
+
+    public ColorTrajectory(final int pStartColorARGB, final long pSeed)
+    {
+        final Random random = new Random(pSeed);
+        final float[][] keyframes = new float[KEYFRAMES][3];
+
+        ColorUtils.colorToHSV(pStartColorARGB, keyframes[0]);
+        for (int i = 1; i < KEYFRAMES; i++)
+        {
+            perturb(keyframes[i - 1], keyframes[i], random);
+        }
+
+        final float[] hsv = new float[3];
+        for (int i = 0; i < KEYFRAMES; i++)
+        {
+            final float[] from = keyframes[i];
+            final float[] to = keyframes[(i + 1) % KEYFRAMES];
+            float hueDelta = to[0] - from[0];
+            if (hueDelta > 180f)
+            {
+                hueDelta -= 360f;
+            }
+            else if (hueDelta < -180f)
+            {
+                hueDelta += 360f;
+            }
+
+            for (int step = 0; step < STEPS_PER_KEYFRAME; step++)
+            {
+                final float progress = (float) step / STEPS_PER_KEYFRAME;
+                hsv[0] = from[0] + hueDelta * progress;
+                if (hsv[0] >= 360f)
+                {
+                    hsv[0] -= 360f;
+                }
+                else if (hsv[0] < 0f)
+                {
+                    hsv[0] += 360f;
+                }
+                hsv[1] = from[1] + (to[1] - from[1]) * progress;
+                hsv[2] = from[2] + (to[2] - from[2]) * progress;
+                this.mGradient[i * STEPS_PER_KEYFRAME + step] = ColorUtils.HSVToColor(hsv);
+            }
+        }
+    }
+
+    public int getLength()
+    {
+        return this.mGradient.length;
+    }
+
+    /**
+     * @param pPosition position along the path, in keyframes. Wraps around.
+     */
+    public int getColor(final float pPosition)
+    {
+        int index = (int) (pPosition * STEPS_PER_KEYFRAME) % this.mGradient.length;
+        if (index < 0)
+        {
+            index += this.mGradient.length;
+        }
+        return this.mGradient[index];
+    }
+
+    private static void perturb(final float[] pFrom, final float[] pTo, final Random pRandom)
+    {
+        // Perturb values by hue, avoiding overly dark or bright colours
+        pTo[0] = pFrom[0] + randomSign(pRandom) * (pRandom.nextFloat() * 20.0f + 10.0f); // between 10 and 30 degrees
+        if (pTo[0] > 360f) {
+            pTo[0] -= 360f;
+        }
+        else if (pTo[0] < 0f) {
+            pTo[0] += 360f;
+        }
+        pTo[1] = Math.max(0.4f, Math.min(0.7f, pFrom[1] + randomSign(pRandom) * 0.1f));
+        pTo[2] = Math.max(0.4f, Math.min(0.7f, pFrom[2] + randomSign(pRandom) * 0.1f));
+    }
+
+    private static int randomSign(final Random pRandom)
+    {
+        return pRandom.nextBoolean() ? 1 : -1;
+    }
+}
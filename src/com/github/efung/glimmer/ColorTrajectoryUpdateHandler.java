@@ -0,0 +1,72 @@
+package com.github.efung.glimmer;
+
+import org.andengine.engine.handler.IUpdateHandler;
+
+/**
+ * Moves the colour of newly spawned particles along a {@link ColorTrajectory}, one keyframe per period, so that it
+ * glides instead of stepping. Each update is a table lookup.
+ */
+public class ColorTrajectoryUpdateHandler implements IUpdateHandler
+{
+    private final ColorTrajectory mTrajectory;
+    private final StoreColorInitializer mColorInitializer;
+    private float mSecondsPerKeyframe;
+    private float mLoopSeconds;
+    // Hours into a long loop, a float would no longer count a frame's time accurately
+    private double mSecondsElapsed;
+
+    public ColorTrajectoryUpdateHandler(final ColorTrajectory pTrajectory, final StoreColorInitializer pColorInitializer, final float pSecondsPerKeyframe)
+    {
+        this.mTrajectory = pTrajectory;
+        this.mColorInitializer = pColorInitializer;
+        this.mSecondsPerKeyframe = pSecondsPerKeyframe;
+        this.mLoopSeconds = pSecondsPerKeyframe * pTrajectory.getLength() / ColorTrajectory.STEPS_PER_KEYFRAME;
+        pColorInitializer.setColor(pTrajectory.getColor(0f));
+    }
+
+    /**
+     * Changes how long each keyframe lasts, carrying on from the current colour.
+     */
+    public void setSecondsPerKeyframe(final float pSecondsPerKeyframe)
+    {
+        this.mSecondsElapsed *= pSecondsPerKeyframe / this.mSecondsPerKeyframe;
+        this.mSecondsPerKeyframe = pSecondsPerKeyframe;
+        this.mLoopSeconds = pSecondsPerKeyframe * this.mTrajectory.getLength() / ColorTrajectory.STEPS_PER_KEYFRAME;
+    }
+
+    /**
+     * @return seconds since the start of the trajectory's current loop
+     */
+    public float getSecondsElapsed()
+    {
+        return (float) this.mSecondsElapsed;
+    }
+
+    /**
+     * Jumps to the given time along the trajectory, e.g. to carry on from a saved scene.
+     */
+    public void setSecondsElapsed(final float pSecondsElapsed)
+    {
+        this.mSecondsElapsed = pSecondsElapsed % this.mLoopSeconds;
+        this.mColorInitializer.setColor(this.mTrajectory.getColor((float) (this.mSecondsElapsed / this.mSecondsPerKeyframe)));
+    }
+
+    @Override
+    public void onUpdate(final float pSecondsElapsed)
+    {
+        // Wrapped, so that precision isn't lost after running for days
+        this.mSecondsElapsed += pSecondsElapsed;
+        if (this.mSecondsElapsed >= this.mLoopSeconds)
+        {
+            this.mSecondsElapsed -= this.mLoopSeconds;
+        }
+        this.mColorInitializer.setColor(this.mTrajectory.getColor((float) (this.mSecondsElapsed / this.mSecondsPerKeyframe)));
+    }
+
+    @Override
+    public void reset()
+    {
+        this.mSecondsElapsed = 0.0;
+        this.mColorInitializer.setColor(this.mTrajectory.getColor(0f));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.efung.glimmer;
+
+/**
+ * Remembers which packed tile colours are in a hardware colour buffer, so that only chunks of tiles whose colours
+ * differ from the new ones have to be uploaded.
+ *
+ * Colours are compared as packed by {@link RenderState#packColor}, i.e. at the 8 bits per channel that are drawn, so
+ * a dot whose alpha moved by less than a step during a slow fade doesn't count as changed. Chunks that changed are
+ * joined into runs, bridging short gaps, as each upload is a call into the driver of its own.
+ */
+public class ColorUploadTracker
+{
+    public static final int CHUNK_TILES = 64;
+    // Unchanged chunks between two runs that are uploaded anyway rather than starting another run
+    private static final int MAX_GAP_CHUNKS = 2;
+
+    private final int mGridTiles;
+    private final int[] mUploadedColors;
+    private boolean mUploadedValid;
+
+    // Tile ranges to upload, found by the last findChangedRuns()
+    private final int[] mRunStarts;
+    private final int[] mRunEnds;
+
+    public ColorUploadTracker(final int pGridTiles)
+    {
+        this.mGridTiles = pGridTiles;
+        this.mUploadedColors = new int[pGridTiles];
+        final int chunks = (pGridTiles + CHUNK_TILES - 1) / CHUNK_TILES;
+        this.mRunStarts = new int[chunks];
+        this.mRunEnds = new int[chunks];
+    }
+
+    /**
+     * Forgets what was uploaded, e.g. because the buffer was recreated, so that the next call uploads everything.
+     */
+    public void invalidate()
+    {
+        this.mUploadedValid = false;
+    }
+
+    /**
+     * Finds the runs of tiles in [pFirstTile, pTilesEnd) whose colours differ from those uploaded, and takes them as
+     * uploaded. After {@link #invalidate()}, the whole grid is one run instead, so that tiles out of range are known
+     * too.
+     *
+     * @return the number of runs, each from {@link #getRunStart} to {@link #getRunEnd}
+     */
+    public int findChangedRuns(final int[] pTileColors, final int pFirstTile, final int pTilesEnd)
+    {
+        final int[] uploadedColors = this.mUploadedColors;
+        if (!this.mUploadedValid)
+        {
+            System.arraycopy(pTileColors, 0, uploadedColors, 0, this.mGridTiles);
+            this.mUploadedValid = true;
+            this.mRunStarts[0] = 0;
+            this.mRunEnds[0] = this.mGridTiles;
+            return this.mGridTiles > 0 ? 1 : 0;
+        }
+
+        int runs = 0;
+        int lastChangedChunkEnd = -1;
+        for (int chunkStart = pFirstTile - pFirstTile % CHUNK_TILES; chunkStart < pTilesEnd; chunkStart += CHUNK_TILES)
+        {
+            final int start = Math.max(chunkStart, pFirstTile);
+            final int end = Math.min(chunkStart + CHUNK_TILES, pTilesEnd);
+            if (!copyIfChanged(pTileColors, uploadedColors, start, end))
+            {
+                continue;
+            }
+
+            if (runs > 0 && start - lastChangedChunkEnd <= MAX_GAP_CHUNKS * CHUNK_TILES)
+            {
+                // The gap in between is unchanged, so uploading it again is harmless
+                this.mRunEnds[runs - 1] = end;
+            }
+            else
+            {
+                this.mRunStarts[runs] = start;
+                this.mRunEnds[runs] = end;
+                runs++;
+            }
+            lastChangedChunkEnd = end;
+        }
+        return runs;
+    }
+
+    public int getRunStart(final int pRun)
+    {
+        return this.mRunStarts[pRun];
+    }
+
+    public int getRunEnd(final int pRun)
+    {
+        return this.mRunEnds[pRun];
+    }
+
+    /**
+     * @return whether any colour in [pStart, pEnd) differed, in which case all of them have been copied
+     */
+    private static boolean copyIfChanged(final int[] pTileColors, final int[] pUploadedColors, final int pStart, final int pEnd)
+    {
+        for (int tile = pStart; tile < pEnd; tile++)
+        {
+            if (pTileColors[tile] != pUploadedColors[tile])
+            {
+                System.arraycopy(pTileColors, tile, pUploadedColors, tile, pEnd - tile);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.efung.glimmer;
+
+/**
+ * HSV conversions with the same conventions as android.graphics.Color, but usable off the device: hue is in degrees
+ * [0, 360), saturation and value are in [0, 1].
+ */
+public final class ColorUtils
+{
+    private ColorUtils()
+    {
+    }
+
+    public static void colorToHSV(final int pColorARGB, final float[] pHSV)
+    {
+        final int r = (pColorARGB >> 16) & 0xFF;
+        final int g = (pColorARGB >> 8) & 0xFF;
+        final int b = pColorARGB & 0xFF;
+
+        final int max = Math.max(r, Math.max(g, b));
+        final int min = Math.min(r, Math.min(g, b));
+        final int delta = max - min;
+
+        pHSV[2] = max / 255f;
+        if (delta == 0)
+        {
+            pHSV[0] = 0f;
+            pHSV[1] = 0f;
+            return;
+        }
+        pHSV[1] = (float) delta / max;
+
+        float hue;
+        if (r == max)
+        {
+            hue = (float) (g - b) / delta;
+        }
+        else if (g == max)
+        {
+            hue = 2f + (float) (b - r) / delta;
+        }
+        else
+        {
+            hue = 4f + (float) (r - g) / delta;
+        }
+        hue *= 60f;
+        if (hue < 0f)
+        {
+            hue += 360f;
+        }
+        pHSV[0] = hue;
+    }
+
+    /**
+     * @return the colour as packed ARGB, fully opaque
+     */
+    public static int HSVToColor(final float[] pHSV)
+    {
+        final float saturation = Math.max(0f, Math.min(1f, pHSV[1]));
+        final float value = Math.max(0f, Math.min(1f, pHSV[2]));
+
+        if (saturation == 0f)
+        {
+            final int grey = Math.round(value * 255f);
+            return 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+        }
+
+        final float hue = (pHSV[0] < 0f || pHSV[0] >= 360f) ? 0f : pHSV[0] / 60f;
+        final int sector = (int) hue;
+        final float fraction = hue - sector;
+        final float p = value * (1f - saturation);
+        final float q = value * (1f - saturation * fraction);
+        final float t = value * (1f - saturation * (1f - fraction));
+
+        final float r;
+        final float g;
+        final float b;
+        switch (sector)
+        {
+            case 0:
+                r = value; g = t; b = p;
+                break;
+            case 1:
+                r = q; g = value; b = p;
+                break;
+            case 2:
+                r = p; g = value; b = t;
+                break;
+            case 3:
+                r = p; g = q; b = value;
+                break;
+            case 4:
+                r = t; g = p; b = value;
+                break;
+            default:
+                r = value; g = p; b = q;
+                break;
+        }
+        return 0xFF000000 | (Math.round(r * 255f) << 16) | (Math.round(g * 255f) << 8) | Math.round(b * 255f);
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.efung.glimmer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Every dot size, generated for the display's density and packed side by side into one texture, so that changing
+ * the dot size only means using a different region of it.
+ *
+ * Generated atlases are cached on disk as raw pixels, so generation only happens on the first run at a density.
+ */
+public class DotAtlas
+{
+    // Dot sizes in dp, indexed by GlimmerPreferenceActivity.PREFS_DOT_SIZE_*. The original PNGs were drawn for xhdpi.
+    private static final float[] DOT_SIZES_DP = { 8f, 12f, 16f };
+    private static final int MIN_DOT_SIZE = 4;
+    private static final int PADDING = 2; // between dots, so that filtering doesn't bleed from one into the next
+
+    // Change whenever DotBitmapGenerator draws differently, so that old cache files aren't used
+    private static final int CACHE_VERSION = 1;
+    private static final int CACHE_MAGIC = 0x47444f54; // "GDOT"
+    private static final int CACHE_HEADER_INTS = 4;
+
+    private final int[] mDotSizes = new int[DOT_SIZES_DP.length];
+    private final int[] mDotX = new int[DOT_SIZES_DP.length];
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+
+    public DotAtlas(final float pDensity)
+    {
+        int x = 0;
+        int height = 0;
+        for (int i = 0; i < DOT_SIZES_DP.length; i++)
+        {
+            this.mDotSizes[i] = Math.max(MIN_DOT_SIZE, Math.round(DOT_SIZES_DP[i] * pDensity));
+            this.mDotX[i] = x;
+            x += this.mDotSizes[i] + PADDING;
+            height = Math.max(height, this.mDotSizes[i]);
+        }
+        this.mWidth = nextPowerOfTwo(x);
+        this.mHeight = nextPowerOfTwo(height);
+        this.mPixels = new int[this.mWidth * this.mHeight];
+    }
+
+    /**
+     * @return the atlas for the given density, read from pCacheDir if it was generated before, otherwise generated
+     * and then written there. Failing to use the cache only costs time.
+     */
+    public static DotAtlas create(final float pDensity, final File pCacheDir)
+    {
+        final DotAtlas atlas = new DotAtlas(pDensity);
+        final File cacheFile = new File(pCacheDir, atlas.getCacheFileName());
+        try
+        {
+            if (cacheFile.exists() && atlas.read(cacheFile))
+            {
+                return atlas;
+            }
+        }
+        catch (final IOException e)
+        {
+            // Fall through and generate it
+        }
+
+        atlas.generate();
+        try
+        {
+            atlas.write(cacheFile);
+        }
+        catch (final IOException e)
+        {
+            cacheFile.delete();
+        }
+        return atlas;
+    }
+
+    public int getWidth()
+    {
+        return this.mWidth;
+    }
+
+    public int getHeight()
+    {
+        return this.mHeight;
+    }
+
+    /**
+     * @return opaque ARGB pixels, row by row
+     */
+    public int[] getPixels()
+    {
+        return this.mPixels;
+    }
+
+    public int getDotX(final int pDotSize)
+    {
+        return this.mDotX[pDotSize];
+    }
+
+    public int getDotY(final int pDotSize)
+    {
+        return 0;
+    }
+
+    /**
+     * @return width and height in pixels of the dot of the given GlimmerPreferenceActivity.PREFS_DOT_SIZE_*
+     */
+    public int getDotSize(final int pDotSize)
+    {
+        return this.mDotSizes[pDotSize];
+    }
+
+    public void generate()
+    {
+        for (int i = 0; i < this.mDotSizes.length; i++)
+        {
+            DotBitmapGenerator.generate(this.mDotSizes[i], this.mPixels, this.mDotX[i], this.mWidth);
+        }
+    }
+
+    private String getCacheFileName()
+    {
+        final StringBuilder name = new StringBuilder("dots-v").append(CACHE_VERSION);
+        for (int i = 0; i < this.mDotSizes.length; i++)
+        {
+            name.append('-').append(this.mDotSizes[i]);
+        }
+        return name.append(".raw").toString();
+    }
+
+    private boolean read(final File pFile) throws IOException
+    {
+        final FileInputStream in = new FileInputStream(pFile);
+        try
+        {
+            final FileChannel channel = in.getChannel();
+            if (channel.size() != (CACHE_HEADER_INTS + this.mPixels.length) * 4L)
+            {
+                return false;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+            }
+            buffer.flip();
+
+            final IntBuffer ints = buffer.asIntBuffer();
+            if (ints.get() != CACHE_MAGIC || ints.get() != CACHE_VERSION || ints.get() != this.mWidth || ints.get() != this.mHeight)
+            {
+                return false;
+            }
+            ints.get(this.mPixels);
+            return true;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void write(final File pFile) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((CACHE_HEADER_INTS + this.mPixels.length) * 4);
+        final IntBuffer ints = buffer.asIntBuffer();
+        ints.put(CACHE_MAGIC).put(CACHE_VERSION).put(this.mWidth).put(this.mHeight).put(this.mPixels);
+
+        final FileOutputStream out = new FileOutputStream(pFile);
+        try
+        {
+            final FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static int nextPowerOfTwo(final int pValue)
+    {
+        int power = 1;
+        while (power < pValue)
+        {
+            power <<= 1;
+        }
+        return power;
+    }
+}
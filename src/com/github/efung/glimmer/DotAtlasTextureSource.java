@@ -0,0 +1,37 @@
+package com.github.efung.glimmer;
+
+import android.graphics.Bitmap;
+import org.andengine.opengl.texture.atlas.bitmap.source.IBitmapTextureAtlasSource;
+import org.andengine.opengl.texture.atlas.source.BaseTextureAtlasSource;
+
+/**
+ * Supplies a {@link DotAtlas}'s pixels to a BitmapTextureAtlas. They stay in memory, so the texture can be uploaded
+ * again whenever the GL context is recreated.
+ */
+public class DotAtlasTextureSource extends BaseTextureAtlasSource implements IBitmapTextureAtlasSource
+{
+    private final DotAtlas mDotAtlas;
+
+    public DotAtlasTextureSource(final DotAtlas pDotAtlas)
+    {
+        this(pDotAtlas, 0, 0);
+    }
+
+    public DotAtlasTextureSource(final DotAtlas pDotAtlas, final int pTextureX, final int pTextureY)
+    {
+        super(pTextureX, pTextureY, pDotAtlas.getWidth(), pDotAtlas.getHeight());
+        this.mDotAtlas = pDotAtlas;
+    }
+
+    @Override
+    public DotAtlasTextureSource deepCopy()
+    {
+        return new DotAtlasTextureSource(this.mDotAtlas, this.mTextureX, this.mTextureY);
+    }
+
+    @Override
+    public Bitmap onLoadBitmap(final Bitmap.Config pBitmapConfig)
+    {
+        return Bitmap.createBitmap(this.mDotAtlas.getPixels(), this.mDotAtlas.getWidth(), this.mDotAtlas.getHeight(), pBitmapConfig);
+    }
+}
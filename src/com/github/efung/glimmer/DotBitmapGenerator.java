@@ -0,0 +1,62 @@
+package com.github.efung.glimmer;
+
+/**
+ * Draws the Nexus 4 style dot procedurally at any size: a circle made of horizontal bars with rounded ends, each
+ * brightest along its middle, like the dot PNGs this replaces.
+ *
+ * Each pixel is supersampled, and its coverage is multiplied into its grey level, as the atlas is RGB_565 and has no
+ * alpha. Drawn additively on black, that looks the same.
+ */
+public final class DotBitmapGenerator
+{
+    private static final int BARS = 5;
+    private static final float BAR_FILL = 0.7f; // of each bar's pitch, the rest is gap
+    private static final float RADIUS = 0.92f; // of half the dot size, leaving a margin for filtering
+    private static final float EDGE_BRIGHTNESS = 0.65f;
+    private static final int SUPERSAMPLES = 4; // per axis
+
+    private DotBitmapGenerator()
+    {
+    }
+
+    /**
+     * Writes a pDiameter x pDiameter dot, as opaque ARGB, into pPixels starting at pOffset with the given row stride.
+     */
+    public static void generate(final int pDiameter, final int[] pPixels, final int pOffset, final int pStride)
+    {
+        final float halfBar = BAR_FILL * 0.5f;
+        final float sampleStep = 1f / SUPERSAMPLES;
+
+        for (int y = 0; y < pDiameter; y++)
+        {
+            for (int x = 0; x < pDiameter; x++)
+            {
+                float brightness = 0f;
+                for (int sy = 0; sy < SUPERSAMPLES; sy++)
+                {
+                    // Position within the dot, from -1 to 1
+                    final float v = ((y + (sy + 0.5f) * sampleStep) / pDiameter) * 2f - 1f;
+                    final float barPosition = (v + 1f) * 0.5f * BARS;
+                    final float acrossBar = Math.abs(barPosition - (float) Math.floor(barPosition) - 0.5f);
+                    if (acrossBar >= halfBar)
+                    {
+                        continue;
+                    }
+                    final float shade = EDGE_BRIGHTNESS + (1f - EDGE_BRIGHTNESS) * (1f - acrossBar / halfBar);
+
+                    for (int sx = 0; sx < SUPERSAMPLES; sx++)
+                    {
+                        final float u = ((x + (sx + 0.5f) * sampleStep) / pDiameter) * 2f - 1f;
+                        if (u * u + v * v <= RADIUS * RADIUS)
+                        {
+                            brightness += shade;
+                        }
+                    }
+                }
+
+                final int grey = Math.min(255, Math.round(255f * brightness / (SUPERSAMPLES * SUPERSAMPLES)));
+                pPixels[pOffset + y * pStride + x] = 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.efung.glimmer;
+
+/**
+ * Formats the FPS overlay into a reused StringBuilder, digit by digit, as String.valueOf(float) and friends allocate.
+ */
+public final class FpsFormatter
+{
+    private FpsFormatter()
+    {
+    }
+
+    /**
+     * Replaces the contents of pStringBuilder with e.g. "23.8 / 24": the measured rate to one decimal, then the
+     * rate aimed for, rounded.
+     */
+    public static void format(final StringBuilder pStringBuilder, final float pMeasuredFramesPerSecond, final float pTargetFramesPerSecond)
+    {
+        pStringBuilder.setLength(0);
+
+        final int measuredTenths = Math.max(0, Math.round(pMeasuredFramesPerSecond * 10));
+        appendDigits(pStringBuilder, measuredTenths / 10);
+        pStringBuilder.append('.');
+        pStringBuilder.append((char) ('0' + measuredTenths % 10));
+
+        pStringBuilder.append(" / ");
+        appendDigits(pStringBuilder, Math.max(0, Math.round(pTargetFramesPerSecond)));
+    }
+
+    /**
+     * Appends e.g. "  tier 2 hot": the power governor's tier, and why it isn't 0.
+     */
+    public static void appendTier(final StringBuilder pStringBuilder, final int pTier, final int pReason)
+    {
+        pStringBuilder.append("  tier ");
+        appendDigits(pStringBuilder, pTier);
+        if (pReason != PowerGovernor.REASON_NONE)
+        {
+            pStringBuilder.append(' ');
+            pStringBuilder.append(PowerGovernor.getReasonName(pReason));
+        }
+    }
+
+    /**
+     * Appends a line like "p50 41.5  p95 44.0  p99 80.0  max 212.3 ms", from the whole frames recorded by pProfiler.
+     */
+    public static void appendFrameTimes(final StringBuilder pStringBuilder, final FrameProfiler pProfiler)
+    {
+        pStringBuilder.append("\np50 ");
+        appendMillis(pStringBuilder, pProfiler.getPercentileNanos(FrameProfiler.PHASE_FRAME, 50f));
+        pStringBuilder.append("  p95 ");
+        appendMillis(pStringBuilder, pProfiler.getPercentileNanos(FrameProfiler.PHASE_FRAME, 95f));
+        pStringBuilder.append("  p99 ");
+        appendMillis(pStringBuilder, pProfiler.getPercentileNanos(FrameProfiler.PHASE_FRAME, 99f));
+        pStringBuilder.append("  max ");
+        appendMillis(pStringBuilder, pProfiler.getMaxNanos(FrameProfiler.PHASE_FRAME));
+        pStringBuilder.append(" ms");
+    }
+
+    private static void appendMillis(final StringBuilder pStringBuilder, final long pNanos)
+    {
+        final int tenths = (int) Math.min(Integer.MAX_VALUE, (pNanos + 50000L) / 100000L);
+        appendDigits(pStringBuilder, tenths / 10);
+        pStringBuilder.append('.');
+        pStringBuilder.append((char) ('0' + tenths % 10));
+    }
+
+    private static void appendDigits(final StringBuilder pStringBuilder, final int pValue)
+    {
+        int divisor = 1;
+        while (divisor <= pValue / 10)
+        {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10)
+        {
+            pStringBuilder.append((char) ('0' + (pValue / divisor) % 10));
+        }
+    }
+}
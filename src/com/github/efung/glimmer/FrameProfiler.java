@@ -0,0 +1,231 @@
+package com.github.efung.glimmer;
+
+import java.io.PrintWriter;
+
+/**
+ * Collects how long frames, and the phases within them, take into fixed-bucket histograms, so that the tail of the
+ * distribution can be read off as percentiles. An average hides a single long stall; a histogram doesn't.
+ *
+ * Phases within a frame are added up with {@link #add} as they run, possibly on different threads, and recorded
+ * together by {@link #endFrame}, which must not overlap with them, i.e. the engine's update and draw must
+ * alternate. Phases that happen outside frames, such as sensor events, are recorded one by one with
+ * {@link #record}, as are steps of a simulation running on its own thread. Every phase must only ever be added to or recorded from one thread at a time. Reading results
+ * meanwhile, e.g. for an overlay, may see them slightly out of date. Nothing allocates but {@link #writeReport}.
+ */
+public class FrameProfiler
+{
+    public static final int PHASE_FRAME = 0; // from the start of the update to the end of the draw
+    public static final int PHASE_SENSOR = 1;
+    public static final int PHASE_SPAWN = 2;
+    public static final int PHASE_UPDATE = 3;
+    public static final int PHASE_UPLOAD = 4;
+    public static final int PHASE_DRAW = 5;
+    public static final int PHASE_SIMULATION = 6; // a whole step of the particle simulation, including spawn and update
+    public static final int PHASE_COUNT = 7;
+
+    private static final String[] PHASE_NAMES = { "frame", "sensor", "spawn", "update", "upload", "draw", "simulation" };
+
+    // Buckets are 0.25 ms wide up to 16 ms, 1 ms up to 128 ms and 8 ms up to 1024 ms. The last one holds the rest.
+    private static final long FINE_BUCKET_NANOS = 250000L;
+    private static final long MEDIUM_BUCKET_NANOS = 1000000L;
+    private static final long COARSE_BUCKET_NANOS = 8000000L;
+    private static final int FINE_BUCKETS = 64;
+    private static final int MEDIUM_BUCKETS = 112;
+    private static final int COARSE_BUCKETS = 112;
+    private static final long MEDIUM_START_NANOS = FINE_BUCKETS * FINE_BUCKET_NANOS;
+    private static final long COARSE_START_NANOS = MEDIUM_START_NANOS + MEDIUM_BUCKETS * MEDIUM_BUCKET_NANOS;
+    private static final long OVERFLOW_START_NANOS = COARSE_START_NANOS + COARSE_BUCKETS * COARSE_BUCKET_NANOS;
+    private static final int BUCKETS = FINE_BUCKETS + MEDIUM_BUCKETS + COARSE_BUCKETS + 1;
+
+    private final long[][] mHistograms = new long[PHASE_COUNT][BUCKETS];
+    private final long[] mCounts = new long[PHASE_COUNT];
+    private final long[] mTotalNanos = new long[PHASE_COUNT];
+    private final long[] mMaxNanos = new long[PHASE_COUNT];
+
+    // Time spent in each phase so far this frame, or -1 if it hasn't run
+    private final long[] mFrameNanos = new long[PHASE_COUNT];
+
+    public FrameProfiler()
+    {
+        reset();
+    }
+
+    public static String getPhaseName(final int pPhase)
+    {
+        return PHASE_NAMES[pPhase];
+    }
+
+    /**
+     * Forgets everything recorded so far. Must not overlap with any other call.
+     */
+    public void reset()
+    {
+        for (int phase = 0; phase < PHASE_COUNT; phase++)
+        {
+            final long[] histogram = this.mHistograms[phase];
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+            {
+                histogram[bucket] = 0;
+            }
+            this.mCounts[phase] = 0;
+            this.mTotalNanos[phase] = 0;
+            this.mMaxNanos[phase] = 0;
+            this.mFrameNanos[phase] = -1;
+        }
+    }
+
+    /**
+     * Adds time spent in a phase during the current frame.
+     */
+    public void add(final int pPhase, final long pNanos)
+    {
+        final long frameNanos = this.mFrameNanos[pPhase];
+        this.mFrameNanos[pPhase] = frameNanos < 0 ? pNanos : frameNanos + pNanos;
+    }
+
+    /**
+     * Records the frame, and the time added to each phase that ran during it.
+     */
+    public void endFrame(final long pFrameNanos)
+    {
+        record(PHASE_FRAME, pFrameNanos);
+        for (int phase = 0; phase < PHASE_COUNT; phase++)
+        {
+            if (phase != PHASE_FRAME && this.mFrameNanos[phase] >= 0)
+            {
+                record(phase, this.mFrameNanos[phase]);
+            }
+            this.mFrameNanos[phase] = -1;
+        }
+    }
+
+    /**
+     * Records a single sample of a phase straight away.
+     */
+    public void record(final int pPhase, final long pNanos)
+    {
+        this.mHistograms[pPhase][getBucket(pNanos)]++;
+        this.mCounts[pPhase]++;
+        this.mTotalNanos[pPhase] += pNanos;
+        if (pNanos > this.mMaxNanos[pPhase])
+        {
+            this.mMaxNanos[pPhase] = pNanos;
+        }
+    }
+
+    public long getCount(final int pPhase)
+    {
+        return this.mCounts[pPhase];
+    }
+
+    public long getMaxNanos(final int pPhase)
+    {
+        return this.mMaxNanos[pPhase];
+    }
+
+    public long getMeanNanos(final int pPhase)
+    {
+        final long count = this.mCounts[pPhase];
+        return count == 0 ? 0 : this.mTotalNanos[pPhase] / count;
+    }
+
+    /**
+     * @param pPercentile between 0 and 100
+     * @return the upper end of the bucket holding that percentile, which is within a bucket's width of the true
+     * value, or the maximum if that is lower. 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(final int pPhase, final float pPercentile)
+    {
+        final long count = this.mCounts[pPhase];
+        if (count == 0)
+        {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(count * pPercentile / 100.0));
+        final long[] histogram = this.mHistograms[pPhase];
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += histogram[bucket];
+            if (seen >= rank)
+            {
+                return Math.min(this.mMaxNanos[pPhase], getBucketEndNanos(bucket));
+            }
+        }
+        return this.mMaxNanos[pPhase];
+    }
+
+    /**
+     * Writes count, mean, percentiles and maximum of every phase, then the frame histogram's non-empty buckets.
+     */
+    public void writeReport(final PrintWriter pWriter)
+    {
+        pWriter.println("phase\tcount\tmean\tp50\tp95\tp99\tmax (ms)");
+        for (int phase = 0; phase < PHASE_COUNT; phase++)
+        {
+            pWriter.println(PHASE_NAMES[phase] + '\t' + this.mCounts[phase]
+                    + '\t' + toMillis(getMeanNanos(phase))
+                    + '\t' + toMillis(getPercentileNanos(phase, 50f))
+                    + '\t' + toMillis(getPercentileNanos(phase, 95f))
+                    + '\t' + toMillis(getPercentileNanos(phase, 99f))
+                    + '\t' + toMillis(this.mMaxNanos[phase]));
+        }
+
+        pWriter.println();
+        pWriter.println("frame time (ms)\tframes");
+        final long[] histogram = this.mHistograms[PHASE_FRAME];
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            if (histogram[bucket] > 0)
+            {
+                final String end = bucket == BUCKETS - 1 ? "" : String.valueOf(toMillis(getBucketEndNanos(bucket)));
+                pWriter.println(toMillis(getBucketStartNanos(bucket)) + "-" + end + '\t' + histogram[bucket]);
+            }
+        }
+    }
+
+    private static float toMillis(final long pNanos)
+    {
+        return pNanos / 1e6f;
+    }
+
+    private static int getBucket(final long pNanos)
+    {
+        if (pNanos < MEDIUM_START_NANOS)
+        {
+            return (int) (Math.max(0, pNanos) / FINE_BUCKET_NANOS);
+        }
+        if (pNanos < COARSE_START_NANOS)
+        {
+            return FINE_BUCKETS + (int) ((pNanos - MEDIUM_START_NANOS) / MEDIUM_BUCKET_NANOS);
+        }
+        if (pNanos < OVERFLOW_START_NANOS)
+        {
+            return FINE_BUCKETS + MEDIUM_BUCKETS + (int) ((pNanos - COARSE_START_NANOS) / COARSE_BUCKET_NANOS);
+        }
+        return BUCKETS - 1;
+    }
+
+    private static long getBucketStartNanos(final int pBucket)
+    {
+        if (pBucket < FINE_BUCKETS)
+        {
+            return pBucket * FINE_BUCKET_NANOS;
+        }
+        if (pBucket < FINE_BUCKETS + MEDIUM_BUCKETS)
+        {
+            return MEDIUM_START_NANOS + (pBucket - FINE_BUCKETS) * MEDIUM_BUCKET_NANOS;
+        }
+        if (pBucket < BUCKETS - 1)
+        {
+            return COARSE_START_NANOS + (pBucket - FINE_BUCKETS - MEDIUM_BUCKETS) * COARSE_BUCKET_NANOS;
+        }
+        return OVERFLOW_START_NANOS;
+    }
+
+    private static long getBucketEndNanos(final int pBucket)
+    {
+        return pBucket == BUCKETS - 1 ? Long.MAX_VALUE : getBucketStartNanos(pBucket + 1);
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.efung.glimmer;
+
+import java.util.ArrayList;
+
+/**
+ * The initializers and modifiers of a {@link ParticleStore}, compiled into one pass per particle: colour and lifetime
+ * are set on spawn, and alpha comes from an {@link AlphaCurve} while ageing and expiring in the same loop.
+ *
+ * Only the stages used by the Static Colour and Change Colour scenes can be compiled. Any other stage could depend
+ * on the order in which stages run, so if one is present, {@link #compile} gives up and the store runs each stage
+ * on its own.
+ */
+public class FusedParticlePipeline
+{
+    private final StoreColorInitializer mColorInitializer;
+    private final float mLifetime;
+    private final AlphaCurve mAlphaCurve;
+
+    private FusedParticlePipeline(final StoreColorInitializer pColorInitializer, final float pLifetime, final AlphaCurve pAlphaCurve)
+    {
+        this.mColorInitializer = pColorInitializer;
+        this.mLifetime = pLifetime;
+        this.mAlphaCurve = pAlphaCurve;
+    }
+
+    /**
+     * @return the compiled pipeline, or null if any stage can't be compiled.
+     */
+    public static FusedParticlePipeline compile(final ArrayList<IStoreParticleInitializer> pInitializers, final ArrayList<IStoreParticleModifier> pModifiers)
+    {
+        StoreColorInitializer colorInitializer = null;
+        float lifetime = ParticleStore.LIFETIME_INFINITE;
+
+        // Initializers run in order, so the last one of each kind wins
+        for (int i = 0; i < pInitializers.size(); i++)
+        {
+            final IStoreParticleInitializer initializer = pInitializers.get(i);
+            if (initializer.getClass() == StoreColorInitializer.class)
+            {
+                colorInitializer = (StoreColorInitializer) initializer;
+            }
+            else if (initializer.getClass() == StoreExpireInitializer.class)
+            {
+                lifetime = ((StoreExpireInitializer) initializer).getLifetime();
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        final StoreAlphaModifier[] segments = new StoreAlphaModifier[pModifiers.size()];
+        for (int i = 0; i < pModifiers.size(); i++)
+        {
+            final IStoreParticleModifier modifier = pModifiers.get(i);
+            if (modifier.getClass() != StoreAlphaModifier.class)
+            {
+                return null;
+            }
+            segments[i] = (StoreAlphaModifier) modifier;
+        }
+
+        return new FusedParticlePipeline(colorInitializer, lifetime, segments.length > 0 ? new AlphaCurve(segments) : null);
+    }
+
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex)
+    {
+        if (this.mColorInitializer != null)
+        {
+            pParticleStore.getColors()[pIndex] = this.mColorInitializer.getColor();
+        }
+        pParticleStore.getLifetimes()[pIndex] = this.mLifetime;
+        pParticleStore.getAlphas()[pIndex] = this.mAlphaCurve != null ? this.mAlphaCurve.getAlpha(0f) : 1f;
+    }
+
+    /**
+     * Sets alpha from each visible particle's age, then ages and expires every particle, like the separate stages
+     * would.
+     */
+    public void onUpdateParticles(final ParticleStore pParticleStore, final float pSecondsElapsed)
+    {
+        final int[] tiles = pParticleStore.getTiles();
+        final int firstVisibleTile = pParticleStore.getFirstVisibleTile();
+        final int visibleTilesEnd = pParticleStore.getVisibleTilesEnd();
+        final float[] ages = pParticleStore.getAges();
+        final float[] alphas = pParticleStore.getAlphas();
+        final float lifetime = this.mLifetime;
+        final AlphaCurve alphaCurve = (this.mAlphaCurve == null || this.mAlphaCurve.isConstant()) ? null : this.mAlphaCurve;
+        boolean modified = false;
+
+        // Downwards, so that an expired particle is replaced by one that has already been updated
+        for (int i = pParticleStore.getParticlesAlive() - 1; i >= 0; i--)
+        {
+            final float age = ages[i];
+            final int tile = tiles[i];
+            if (alphaCurve != null && tile >= firstVisibleTile && tile < visibleTilesEnd)
+            {
+                final float alpha = alphaCurve.getAlpha(age);
+                if (alpha != alphas[i])
+                {
+                    alphas[i] = alpha;
+                    modified = true;
+                }
+            }
+
+            ages[i] = age + pSecondsElapsed;
+            if (ages[i] > lifetime)
+            {
+                pParticleStore.expireParticle(i);
+            }
+        }
+
+        if (modified)
+        {
+            pParticleStore.markModified();
+        }
+    }
+
+    /**
+     * The first half of {@link #onUpdateParticles}, over slots [pStart, pEnd) only: sets alpha and ages, but expires
+     * nothing, so that other ranges can be updated at the same time. {@link #expireParticles} must follow once
+     * every range is done.
+     *
+     * @return whether any alpha changed
+     */
+    public boolean updateSlots(final ParticleStore pParticleStore, final int pStart, final int pEnd, final float pSecondsElapsed)
+    {
+        final int[] tiles = pParticleStore.getTiles();
+        final int firstVisibleTile = pParticleStore.getFirstVisibleTile();
+        final int visibleTilesEnd = pParticleStore.getVisibleTilesEnd();
+        final float[] ages = pParticleStore.getAges();
+        final float[] alphas = pParticleStore.getAlphas();
+        final AlphaCurve alphaCurve = (this.mAlphaCurve == null || this.mAlphaCurve.isConstant()) ? null : this.mAlphaCurve;
+        boolean modified = false;
+
+        for (int i = pStart; i < pEnd; i++)
+        {
+            final float age = ages[i];
+            final int tile = tiles[i];
+            if (alphaCurve != null && tile >= firstVisibleTile && tile < visibleTilesEnd)
+            {
+                final float alpha = alphaCurve.getAlpha(age);
+                if (alpha != alphas[i])
+                {
+                    alphas[i] = alpha;
+                    modified = true;
+                }
+            }
+            ages[i] = age + pSecondsElapsed;
+        }
+        return modified;
+    }
+
+    /**
+     * The second half of {@link #onUpdateParticles}. Expiring downwards moves the same particles into the same slots
+     * as expiring each one straight after ageing it would.
+     */
+    public void expireParticles(final ParticleStore pParticleStore)
+    {
+        final float[] ages = pParticleStore.getAges();
+        final float lifetime = this.mLifetime;
+        for (int i = pParticleStore.getParticlesAlive() - 1; i >= 0; i--)
+        {
+            if (ages[i] > lifetime)
+            {
+                pParticleStore.expireParticle(i);
+            }
+        }
+    }
+}
@@ -1,81 +1,192 @@
 package com.github.efung.glimmer;
 
-import android.content.SharedPreferences;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Typeface;
-import android.preference.PreferenceManager;
+import android.os.BatteryManager;
+import android.os.Handler;
 import android.util.DisplayMetrics;
-import org.andengine.engine.LimitedFPSEngine;
+import android.util.Log;
 import org.andengine.engine.camera.Camera;
-import org.andengine.engine.handler.timer.ITimerCallback;
-import org.andengine.engine.handler.timer.TimerHandler;
+import org.andengine.engine.camera.hud.HUD;
+import org.andengine.engine.handler.IUpdateHandler;
 import org.andengine.engine.options.EngineOptions;
 import org.andengine.engine.options.ScreenOrientation;
 import org.andengine.engine.options.resolutionpolicy.FillResolutionPolicy;
-import org.andengine.entity.particle.BatchedSpriteParticleSystem;
-import org.andengine.entity.particle.Particle;
-import org.andengine.entity.particle.ParticleSystem;
-import org.andengine.entity.particle.initializer.ColorParticleInitializer;
-import org.andengine.entity.particle.initializer.RotationParticleInitializer;
-import org.andengine.entity.particle.modifier.AlphaParticleModifier;
-import org.andengine.entity.particle.modifier.ExpireParticleInitializer;
-import org.andengine.entity.particle.modifier.IParticleModifier;
 import org.andengine.entity.scene.Scene;
-import org.andengine.entity.sprite.UncoloredSprite;
 import org.andengine.entity.text.Text;
 import org.andengine.entity.text.TextOptions;
 import org.andengine.entity.util.AverageFPSCounter;
 import org.andengine.extension.ui.livewallpaper.BaseLiveWallpaperService;
 import org.andengine.input.sensor.SensorDelay;
-import org.andengine.input.sensor.orientation.IOrientationListener;
-import org.andengine.input.sensor.orientation.OrientationData;
 import org.andengine.input.sensor.orientation.OrientationSensorOptions;
 import org.andengine.opengl.font.Font;
 import org.andengine.opengl.font.FontFactory;
 import org.andengine.opengl.texture.TextureOptions;
 import org.andengine.opengl.texture.atlas.bitmap.BitmapTextureAtlas;
-import org.andengine.opengl.texture.atlas.bitmap.BitmapTextureAtlasTextureRegionFactory;
 import org.andengine.opengl.texture.bitmap.BitmapTextureFormat;
 import org.andengine.opengl.texture.region.ITextureRegion;
+import org.andengine.opengl.texture.region.TextureRegion;
 import org.andengine.opengl.util.GLState;
 import org.andengine.util.HorizontalAlign;
-import org.andengine.util.color.Color;
-import org.andengine.util.color.ColorUtils;
 import org.andengine.util.math.MathUtils;
 
-public class GlimmerLiveWallpaper extends BaseLiveWallpaperService
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+public class GlimmerLiveWallpaper extends BaseLiveWallpaperService implements MotionAdaptiveOrientationListener.IFilteredOrientationListener
 {
-    private static final float PARTICLE_LIFETIME = 9.0f;
     private static final int MAX_FRAMES_PER_SECOND = 24;
-
-    private int CAMERA_WIDTH;
-    private int CAMERA_HEIGHT;
+    private static final int MIN_FRAMES_PER_SECOND = 1;
+    // Fraction of one core that producing frames may take before the power governor lowers quality
+    private static final float CPU_BUDGET = 0.1f;
+    // With Scroll on, the dots are this many screens wide and the camera pans across them as home screens change
+    private static final float SCROLL_WIDTH_SCREENS = 1.5f;
+    // Layouts kept for surface sizes, enough for portrait and landscape
+    private static final int LAYOUT_CACHE_SIZE = 2;
+    private static final String SNAPSHOT_FILENAME = "particles.snapshot";
+    private static final String FRAME_PROFILE_FILENAME = "frame-profile.txt";
+
+    private final String TAG = getClass().getName();
 
     private Camera mCamera;
     private BitmapTextureAtlas mBitmapTextureAtlas;
+    private String mDotAtlasKey; // Of the dot atlas held in SharedResources
+    private ITextureRegion[] mDotTextureRegions; // Indexed by GlimmerPreferenceActivity.PREFS_DOT_SIZE_*
     private ITextureRegion mParticleTextureRegion;
-    private ParticleSystem<UncoloredSprite> mParticleSystem;
+    private volatile GridLayout mLayout; // The one shown. Swapped on the update thread, read from callbacks too.
+    private final GridLayoutCache mLayoutCache = new GridLayoutCache(LAYOUT_CACHE_SIZE);
+    private ParticleSnapshot mPendingSnapshot; // Restored by the next buildLayout()
+    // Shared by the layouts built for the current settings, and by other engines' built for the same settings, so that
+    // every orientation and a preview go through the same colours and can share what is built from the seed
+    private long mParticleSeed;
+    private String mParticleSeedKey; // Of the seed held in SharedResources, while there are layouts
+    private volatile long mSurfaceSize; // Width in the high half, height in the low half
+    private Text mFpsText;
+    private IUpdateHandler mFpsCounter;
+    private FrameProfiler mFrameProfiler; // Only while the FPS overlay is shown
+    private ParticleUpdateWorkers mUpdateWorkers; // Null on single core devices
+
+    private final PowerGovernor mPowerGovernor = new PowerGovernor(CPU_BUDGET);
+    private int mAppliedPowerTier = -1; // Only used on the update thread, -1 to apply the tier again
+    private final IUpdateHandler mPowerTierHandler = new IUpdateHandler()
+    {
+        @Override
+        public void onUpdate(final float pSecondsElapsed)
+        {
+            final int tier = GlimmerLiveWallpaper.this.mPowerGovernor.getTier();
+            if (tier != GlimmerLiveWallpaper.this.mAppliedPowerTier)
+            {
+                GlimmerLiveWallpaper.this.mAppliedPowerTier = tier;
+                applyPowerTier(tier);
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+        }
+    };
+    private volatile float mXOffset = 0.5f; // From the launcher, 0 on the leftmost home screen and 1 on the rightmost
+    private final IUpdateHandler mCameraHandler = new IUpdateHandler()
+    {
+        @Override
+        public void onUpdate(final float pSecondsElapsed)
+        {
+            updateLayout();
+            updateScroll();
+        }
+
+        @Override
+        public void reset()
+        {
+        }
+    };
+    private boolean mBatteryReceiverRegistered;
+    private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(final Context pContext, final Intent pIntent)
+        {
+            final int scale = pIntent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            final float level = pIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, scale) / (float) Math.max(1, scale);
+            final boolean charging = pIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            final float temperature = pIntent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f; // Tenths of a degree
+            GlimmerLiveWallpaper.this.mPowerGovernor.setBatteryState(level, charging, temperature);
+        }
+    };
 
     // Prefs
-    private int mMode;
-    private float mColourChangePeriod;
-    private int mDotSize;
-    private int mStaticColour; // ARGB packed
-    private boolean mShowFps;
+    private SettingsStore mSettingsStore;
+    private GlimmerSettings mSettings; // The ones the scene was last built or updated for
 
     private float mCurrentPitch; // rotation around X-axis, screen's horizontal axis (tilting forward and backward)
     private float mCurrentRoll; // rotation around Y-axis, screen's vertical axis (tilting left and right)
+    private float mLastFrameRequestTilt;
+    private boolean mSensorsEnabled;
+    // Readings are smoothed, and the sensor slows to NORMAL while the device is still. NORMAL alone makes it stutter.
+    private final MotionAdaptiveOrientationListener mOrientationListener = new MotionAdaptiveOrientationListener(this, SensorDelay.NORMAL, SensorDelay.GAME);
+    private final Handler mHandler = new Handler();
+    private final Runnable mReregisterSensorRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (GlimmerLiveWallpaper.this.mSensorsEnabled)
+            {
+                GlimmerLiveWallpaper.this.mEngine.disableOrientationSensor(GlimmerLiveWallpaper.this);
+                GlimmerLiveWallpaper.this.mEngine.enableOrientationSensor(GlimmerLiveWallpaper.this,
+                        GlimmerLiveWallpaper.this.mOrientationListener,
+                        new OrientationSensorOptions(GlimmerLiveWallpaper.this.mOrientationListener.getSensorDelay()));
+            }
+        }
+    };
     private Font mFont;
 
 
+    @Override
+    public void onCreate()
+    {
+        // Ready before super.onCreate() sets up the engine
+        this.mSettingsStore = new SettingsStore(this);
+        this.mSettingsStore.start();
+        this.mUpdateWorkers = ParticleUpdateWorkers.createForDevice();
+
+        super.onCreate();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        this.mSettingsStore.stop();
+        removeLayouts();
+        if (this.mDotAtlasKey != null)
+        {
+            SharedResources.release(this.mDotAtlasKey);
+            this.mDotAtlasKey = null;
+        }
+        if (this.mUpdateWorkers != null)
+        {
+            this.mUpdateWorkers.shutdown();
+        }
+
+        super.onDestroy();
+    }
+
     @Override
     public EngineOptions onCreateEngineOptions()
     {
-        this.CAMERA_WIDTH = this.getResources().getDisplayMetrics().widthPixels;
-        this.CAMERA_HEIGHT = this.getResources().getDisplayMetrics().heightPixels;
-        this.mCamera = new Camera(0, 0, CAMERA_WIDTH, CAMERA_HEIGHT);
+        final int width = this.getResources().getDisplayMetrics().widthPixels;
+        final int height = this.getResources().getDisplayMetrics().heightPixels;
+        this.mCamera = new Camera(0, 0, width, height);
         this.mCamera.setResizeOnSurfaceSizeChanged(true);
+        setSurfaceSize(width, height);
 
-        if (this.CAMERA_HEIGHT > this.CAMERA_WIDTH) {
+        if (height > width) {
             return new EngineOptions(true, ScreenOrientation.PORTRAIT_FIXED, new FillResolutionPolicy(), this.mCamera);
         } else {
             return new EngineOptions(true, ScreenOrientation.LANDSCAPE_FIXED, new FillResolutionPolicy(), this.mCamera);
@@ -85,15 +196,39 @@ public class GlimmerLiveWallpaper extends BaseLiveWallpaperService
     @Override
     public org.andengine.engine.Engine onCreateEngine(final EngineOptions pEngineOptions)
     {
-        return new LimitedFPSEngine(pEngineOptions, MAX_FRAMES_PER_SECOND);
-//        return new org.andengine.engine.Engine(pEngineOptions);
+        final AdaptiveFPSEngine engine = new AdaptiveFPSEngine(pEngineOptions, MIN_FRAMES_PER_SECOND, MAX_FRAMES_PER_SECOND);
+        engine.setPowerGovernor(this.mPowerGovernor);
+        engine.registerUpdateHandler(this.mPowerTierHandler);
+        engine.registerUpdateHandler(this.mCameraHandler);
+        return engine;
     }
 
     @Override
     public void onCreateResources(OnCreateResourcesCallback pOnCreateResourcesCallback) throws Exception
     {
-        BitmapTextureAtlasTextureRegionFactory.setAssetBasePath("gfx/");
-        this.mBitmapTextureAtlas = new BitmapTextureAtlas(this.getTextureManager(), 32, 32, BitmapTextureFormat.RGB_565, TextureOptions.BILINEAR);
+        // Every dot size goes into one texture, uploaded once, so changing size only means picking another region. The
+        // pixels are shared with other engines, e.g. a preview's, though each needs a texture of its own.
+        final float density = this.getResources().getDisplayMetrics().density;
+        final File cacheDir = this.getCacheDir();
+        this.mDotAtlasKey = "dots:" + density;
+        final DotAtlas dotAtlas = SharedResources.acquire(this.mDotAtlasKey, new SharedResources.IFactory<DotAtlas>()
+        {
+            @Override
+            public DotAtlas create()
+            {
+                return DotAtlas.create(density, cacheDir);
+            }
+        });
+        this.mBitmapTextureAtlas = new BitmapTextureAtlas(this.getTextureManager(), dotAtlas.getWidth(), dotAtlas.getHeight(),
+                BitmapTextureFormat.RGB_565, TextureOptions.BILINEAR);
+        this.mBitmapTextureAtlas.addTextureAtlasSource(new DotAtlasTextureSource(dotAtlas), 0, 0);
+        this.mDotTextureRegions = new ITextureRegion[3];
+        for (int dotSize = GlimmerPreferenceActivity.PREFS_DOT_SIZE_S; dotSize <= GlimmerPreferenceActivity.PREFS_DOT_SIZE_L; dotSize++)
+        {
+            this.mDotTextureRegions[dotSize] = new TextureRegion(this.mBitmapTextureAtlas,
+                    dotAtlas.getDotX(dotSize), dotAtlas.getDotY(dotSize), dotAtlas.getDotSize(dotSize), dotAtlas.getDotSize(dotSize));
+        }
+        this.mBitmapTextureAtlas.load();
 
         this.mFont = FontFactory.create(this.getFontManager(), this.getTextureManager(), 256, 256,
                 TextureOptions.BILINEAR, Typeface.DEFAULT, 24, android.graphics.Color.WHITE);
@@ -106,7 +241,10 @@ public class GlimmerLiveWallpaper extends BaseLiveWallpaperService
     public void onCreateScene(OnCreateSceneCallback pOnCreateSceneCallback) throws Exception
     {
         final Scene scene = new Scene();
-        scene.setRotationCenter(CAMERA_WIDTH/2, CAMERA_HEIGHT/2);
+        // Stays put while the camera pans across the scene
+        final HUD hud = new HUD();
+        hud.setBackgroundEnabled(false);
+        this.mCamera.setHUD(hud);
         pOnCreateSceneCallback.onCreateSceneFinished(scene);
     }
 
@@ -122,314 +260,610 @@ public class GlimmerLiveWallpaper extends BaseLiveWallpaperService
         super.onPauseGame();
 
         disableSensors();
+        if (this.mBatteryReceiverRegistered)
+        {
+            this.unregisterReceiver(this.mBatteryReceiver);
+            this.mBatteryReceiverRegistered = false;
+        }
+        // The particles only stay put once the simulation has stopped
+        if (this.mLayout != null)
+        {
+            this.mLayout.getParticleSystem().getSimulation().stop();
+        }
+        writeSnapshot();
+        writeFrameProfile();
+    }
+
+    @Override
+    public void onSurfaceCreated(final GLState pGLState)
+    {
+        super.onSurfaceCreated(pGLState);
+
+        // Any hardware buffers we created belonged to the previous GL context, cached layouts' included
+        this.mLayoutCache.setNotLoadedToHardware();
     }
 
     @Override
     public void onSurfaceChanged(final GLState pGLState, final int pWidth, final int pHeight) {
         super.onSurfaceChanged(pGLState, pWidth, pHeight);
 
-        if ( (mEngine.getEngineOptions().getScreenOrientation() == ScreenOrientation.PORTRAIT_FIXED && pWidth > pHeight) ||
-            (mEngine.getEngineOptions().getScreenOrientation() == ScreenOrientation.LANDSCAPE_FIXED && pHeight > pWidth)) {
-            mEngine.getScene().setRotation(90f);
-        } else {
-            mEngine.getScene().setRotation(0f);
+        // The update thread swaps in a layout built for this size, rather than turning the old one sideways
+        setSurfaceSize(pWidth, pHeight);
+        getAdaptiveFPSEngine().requestFrame();
+    }
+
+    private void setSurfaceSize(final int pWidth, final int pHeight)
+    {
+        this.mSurfaceSize = ((long) pWidth << 32) | pHeight;
+    }
+
+    /**
+     * Swaps in a layout for the surface's size once it no longer matches the one shown, e.g. after the device was
+     * turned. A size seen before is already built, so only a new one costs a build, here on the update thread.
+     */
+    private void updateLayout()
+    {
+        final GridLayout shown = this.mLayout;
+        final long surfaceSize = this.mSurfaceSize;
+        final int width = (int) (surfaceSize >>> 32);
+        final int height = (int) surfaceSize;
+        if (shown == null || shown.isForSize(width, height))
+        {
+            return;
         }
+
+        final float clockSeconds = shown.getClockSeconds();
+        hideLayout();
+        GridLayout layout = this.mLayoutCache.get(width, height);
+        if (layout != null)
+        {
+            this.mLayoutCache.put(layout);
+        }
+        else
+        {
+            layout = buildLayout(width, height);
+        }
+        // Colours carry on from where the other orientation had got to
+        layout.setClockSeconds(clockSeconds);
+        showLayout(layout);
+        startLayout(layout);
+    }
+
+    /**
+     * Starts stepping the layout shown, once anything that must be set while it is stopped has been.
+     */
+    private void startLayout(final GridLayout pLayout)
+    {
+        final ClosedFormAnimation closedFormAnimation = pLayout.getClosedFormAnimation();
+        if (closedFormAnimation != null)
+        {
+            // Nothing to catch up on: the dots are wherever the clock says they are
+            closedFormAnimation.setTime(System.currentTimeMillis() / 1000.0);
+        }
+        pLayout.getParticleSystem().getSimulation().start();
     }
 
     @Override
-    public void onResumeGame()
+    protected void onOffsetsChanged(final float pXOffset, final float pYOffset, final float pXOffsetStep, final float pYOffsetStep, final int pXPixelOffset, final int pYPixelOffset)
     {
-        final boolean settingsChanged = readSettingsFromPreferences();
+        super.onOffsetsChanged(pXOffset, pYOffset, pXOffsetStep, pYOffsetStep, pXPixelOffset, pYPixelOffset);
+
+        // Only moves the camera, on the next frame; the particles stay as they are
+        this.mXOffset = pXOffset;
+        getAdaptiveFPSEngine().requestFrame();
+    }
 
-        if (mMode == GlimmerPreferenceActivity.PREFS_MODE_REFLECT_LIGHT)
+    /**
+     * Pans the camera to the launcher's offset across a grid wider than the screen, and limits updating and drawing
+     * to the tiles in view. Runs on the update thread.
+     */
+    private void updateScroll()
+    {
+        final GridLayout layout = this.mLayout;
+        if (layout == null)
         {
-            enableSensors();
+            return;
         }
-
-        if (settingsChanged)
+        final GlimmerParticleSystem particleSystem = layout.getParticleSystem();
+        final GridParticleEmitter particleEmitter = layout.getParticleEmitter();
+
+        final float gridWidth = layout.getGridWidth();
+        final boolean scrolling = gridWidth > layout.getWidth();
+        final float centerX = layout.getWidth() * 0.5f + (scrolling ? (this.mXOffset - 0.5f) * (gridWidth - layout.getWidth()) : 0f);
+        final float centerY = layout.getHeight() * 0.5f;
+        if (centerX != this.mCamera.getCenterX() || centerY != this.mCamera.getCenterY())
         {
-            resetScene();
-            buildScene(this.mEngine.getScene());
+            this.mCamera.setCenter(centerX, centerY);
         }
 
-        super.onResumeGame();
+        if (scrolling)
+        {
+            particleSystem.setVisibleTiles(particleEmitter.getFirstTileRightOf(this.mCamera.getXMin()),
+                    particleEmitter.getTilesEndLeftOf(this.mCamera.getXMax()));
+        }
+        else
+        {
+            particleSystem.setVisibleTiles(0, particleEmitter.getGridTiles());
+        }
     }
 
-    private boolean readSettingsFromPreferences()
+    @Override
+    public void onResumeGame()
     {
-        boolean settingsChanged = false;
-        int temp;
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(GlimmerLiveWallpaper.this);
+        final GlimmerSettings settings = this.mSettingsStore.getSettings();
 
-        temp = Integer.valueOf(prefs.getString(this.getString(R.string.prefs_key_mode),
-                String.valueOf(GlimmerPreferenceActivity.PREFS_MODE_DEFAULT)));
-        if (this.mMode != temp)
+        // The process was restarted since the particles were last saved, so bring them back instead of starting empty
+        if (this.mLayout == null)
         {
-            this.mMode = temp;
-            settingsChanged = true;
+            this.mPendingSnapshot = readSnapshot(settings);
         }
 
-        temp = Integer.valueOf(prefs.getString(this.getString(R.string.prefs_key_dot_size),
-                String.valueOf(GlimmerPreferenceActivity.PREFS_DOT_SIZE_DEFAULT)));
-        if (this.mDotSize != temp)
+        if (settings.getMode() == GlimmerPreferenceActivity.PREFS_MODE_REFLECT_LIGHT)
         {
-            this.mDotSize = temp;
-            settingsChanged = true;
+            enableSensors();
         }
 
-        temp = prefs.getInt(this.getString(R.string.prefs_key_colour_change_period), GlimmerPreferenceActivity.PREFS_COLOUR_CHANGE_PERIOD_DEFAULT);
-        if (this.mColourChangePeriod != temp)
+        applySettings(settings);
+        // Battery state is sticky, so the current state is delivered straight away
+        if (!this.mBatteryReceiverRegistered)
         {
-            this.mColourChangePeriod = temp;
-            settingsChanged = true;
+            this.registerReceiver(this.mBatteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            this.mBatteryReceiverRegistered = true;
         }
+        this.mPowerGovernor.restartWindow();
+        if (this.mFrameProfiler != null)
+        {
+            // Each visit to the home screen gets a profile of its own
+            this.mFrameProfiler.reset();
+        }
+        // Settings are applied by now, as the particles belong to the simulation thread from here on
+        startLayout(this.mLayout);
 
-        temp = prefs.getInt(this.getString(R.string.prefs_key_single_colour), GlimmerPreferenceActivity.PREFS_SINGLE_COLOUR_DEFAULT);
-        if (this.mStaticColour != temp)
+        super.onResumeGame();
+        getAdaptiveFPSEngine().requestFrame();
+    }
+
+    /**
+     * Changes only what is affected by settings that differ from the current ones. Only a new mode, dot size, scroll
+     * or lightweight animation setting rebuilds the particles, dropping the layouts cached for other sizes. Other changes reach every
+     * cached layout. Nothing is compared at all unless the settings store has published a new version.
+     */
+    private void applySettings(final GlimmerSettings pSettings)
+    {
+        if (this.mSettings != null && pSettings.getVersion() == this.mSettings.getVersion())
         {
-            this.mStaticColour = temp;
-            settingsChanged = true;
+            return;
         }
 
-        boolean showFps = prefs.getBoolean(this.getString(R.string.prefs_key_display_fps), GlimmerPreferenceActivity.PREFS_SHOW_FPS_DEFAULT);
-        if (this.mShowFps != showFps)
+        final int changes = pSettings.diff(this.mSettings);
+        this.mSettings = pSettings;
+
+        if ((changes & (GlimmerSettings.CHANGED_MODE | GlimmerSettings.CHANGED_DOT_SIZE | GlimmerSettings.CHANGED_SCROLL
+                | GlimmerSettings.CHANGED_LIGHTWEIGHT)) != 0)
         {
-            this.mShowFps = showFps;
-            settingsChanged = true;
+            removeLayouts();
+            acquireParticleSeed(pSettings);
+            final long surfaceSize = this.mSurfaceSize;
+            showLayout(buildLayout((int) (surfaceSize >>> 32), (int) surfaceSize));
+        }
+        else
+        {
+            for (int i = 0; i < this.mLayoutCache.getLayoutCount(); i++)
+            {
+                final GridLayout layout = this.mLayoutCache.getLayout(i);
+                final ClosedFormAnimation closedFormAnimation = layout.getClosedFormAnimation();
+                if ((changes & GlimmerSettings.CHANGED_COLOUR_CHANGE_PERIOD) != 0 && layout.getColorTrajectoryHandler() != null)
+                {
+                    layout.getColorTrajectoryHandler().setSecondsPerKeyframe(pSettings.getColourChangePeriod());
+                }
+                if ((changes & GlimmerSettings.CHANGED_STATIC_COLOUR) != 0 && layout.getStaticColorInitializer() != null)
+                {
+                    layout.getStaticColorInitializer().setColor(pSettings.getStaticColour());
+                    layout.getParticleStore().setColors(pSettings.getStaticColour());
+                }
+                if (closedFormAnimation != null && pSettings.getMode() == GlimmerPreferenceActivity.PREFS_MODE_CHANGE_COLOUR)
+                {
+                    if ((changes & GlimmerSettings.CHANGED_COLOUR_CHANGE_PERIOD) != 0)
+                    {
+                        closedFormAnimation.setSecondsPerKeyframe(pSettings.getColourChangePeriod());
+                    }
+                }
+                else if (closedFormAnimation != null && (changes & GlimmerSettings.CHANGED_STATIC_COLOUR) != 0)
+                {
+                    closedFormAnimation.setColor(pSettings.getStaticColour());
+                }
+            }
+        }
+
+        if ((changes & GlimmerSettings.CHANGED_SHOW_FPS) != 0)
+        {
+            if (pSettings.isShowFps())
+            {
+                buildFpsDisplay();
+            }
+            else
+            {
+                removeFpsDisplay();
+            }
         }
+    }
 
-        return settingsChanged;
+    /**
+     * Takes the seed of another engine's particles for the same settings, if there are any, or else the saved
+     * particles' or a random one.
+     */
+    private void acquireParticleSeed(final GlimmerSettings pSettings)
+    {
+        final ParticleSnapshot snapshot = this.mPendingSnapshot;
+        this.mParticleSeedKey = "seed:" + pSettings.getMode() + "," + pSettings.getDotSize() + "," + pSettings.isScroll();
+        this.mParticleSeed = SharedResources.acquire(this.mParticleSeedKey, new SharedResources.IFactory<Long>()
+        {
+            @Override
+            public Long create()
+            {
+                return snapshot != null ? snapshot.getSeed() : MathUtils.RANDOM.nextLong();
+            }
+        });
     }
 
-    private String getParticleFilename(final int prefsDotSize)
+    private ITextureRegion getDotTextureRegion(final int prefsDotSize)
     {
         switch (prefsDotSize)
         {
             case GlimmerPreferenceActivity.PREFS_DOT_SIZE_L:
-                return "nexusdot_l.png";
+            case GlimmerPreferenceActivity.PREFS_DOT_SIZE_S:
+                return this.mDotTextureRegions[prefsDotSize];
             case GlimmerPreferenceActivity.PREFS_DOT_SIZE_M:
             default:
-                return "nexusdot_m.png";
-            case GlimmerPreferenceActivity.PREFS_DOT_SIZE_S:
-                return "nexusdot_s.png";
+                return this.mDotTextureRegions[GlimmerPreferenceActivity.PREFS_DOT_SIZE_M];
         }
     }
 
-    private void loadParticleImage()
+    /**
+     * @return a key that only matches snapshots of particles built for the same mode, dot size, scrolling and surface
+     * size
+     */
+    private static int getSnapshotKey(final GlimmerSettings pSettings, final int pWidth, final int pHeight)
     {
-        this.mParticleTextureRegion = BitmapTextureAtlasTextureRegionFactory.createFromAsset(this.mBitmapTextureAtlas,
-                this, getParticleFilename(this.mDotSize), 0, 0);
-        this.mBitmapTextureAtlas.load();
+        int key = pSettings.getMode();
+        key = 31 * key + pSettings.getDotSize();
+        key = 31 * key + (pSettings.isScroll() ? 1 : 0);
+        key = 31 * key + pWidth;
+        key = 31 * key + pHeight;
+        return key;
     }
 
-    private void unloadParticleImage()
+    private File getSnapshotFile()
     {
-        this.mBitmapTextureAtlas.unload();
-        this.mParticleTextureRegion = null;
+        return new File(this.getCacheDir(), SNAPSHOT_FILENAME);
     }
 
-    private void enableSensors()
+    private ParticleSnapshot readSnapshot(final GlimmerSettings pSettings)
     {
-        this.mEngine.enableOrientationSensor(this, new IOrientationListener()
+        try
         {
-            @Override
-            public void onOrientationChanged(OrientationData pOrientationData)
+            final long surfaceSize = this.mSurfaceSize;
+            return ParticleSnapshot.read(getSnapshotFile(), getSnapshotKey(pSettings, (int) (surfaceSize >>> 32), (int) surfaceSize));
+        }
+        catch (final IOException e)
+        {
+            Log.w(TAG, "Couldn't read particle snapshot", e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot()
+    {
+        final GridLayout layout = this.mLayout;
+        if (layout == null || layout.getParticleStore() == null)
+        {
+            // Closed-form layouts have nothing to save, as they are worked out from the clock
+            return;
+        }
+
+        try
+        {
+            ParticleSnapshot.write(getSnapshotFile(), getSnapshotKey(this.mSettings, layout.getWidth(), layout.getHeight()),
+                    layout.getParticleEmitter().getSeed(), layout.getParticleEmitter().getFillState(), layout.getClockSeconds(),
+                    layout.getParticleStore());
+        }
+        catch (final IOException e)
+        {
+            Log.w(TAG, "Couldn't write particle snapshot", e);
+            getSnapshotFile().delete();
+        }
+    }
+
+    /**
+     * Scales frame rate, sensor rate, particle density and Reflect Light updates to the power governor's tier. Runs
+     * on the update thread.
+     */
+    private void applyPowerTier(final int pTier)
+    {
+        getAdaptiveFPSEngine().setMaxFramesPerSecond(MAX_FRAMES_PER_SECOND * PowerGovernor.getFrameRateScale(pTier));
+        // Picked up by the listener with the next reading
+        this.mOrientationListener.setMovingSensorDelay(PowerGovernor.getMovingSensorDelay(pTier));
+
+        final GridLayout layout = this.mLayout;
+        if (layout != null)
+        {
+            final ParticleStore particleStore = layout.getParticleStore();
+            if (particleStore != null)
             {
-                GlimmerLiveWallpaper.this.mCurrentPitch = pOrientationData.getPitch();
-                GlimmerLiveWallpaper.this.mCurrentRoll = pOrientationData.getRoll();
+                particleStore.setParticleLimit(Math.round(particleStore.getParticlesMaximum() * PowerGovernor.getParticleDensity(pTier)));
             }
-
-            @Override
-            public void onOrientationAccuracyChanged(OrientationData pOrientationData)
+            else
+            {
+                layout.getClosedFormAnimation().setDensity(PowerGovernor.getParticleDensity(pTier));
+            }
+            if (layout.getReflectLightEngine() != null)
             {
+                layout.getReflectLightEngine().setMinUpdateSeconds(PowerGovernor.getReflectLightUpdateSeconds(pTier));
             }
-        },
-                new OrientationSensorOptions(SensorDelay.GAME) // NORMAL makes it stutter, but GAME uses more battery...
-        );
+        }
+    }
+
+    private void enableSensors()
+    {
+        this.mOrientationListener.reset();
+        this.mSensorsEnabled = true;
+        this.mEngine.enableOrientationSensor(this, this.mOrientationListener,
+                new OrientationSensorOptions(this.mOrientationListener.getSensorDelay()));
     }
 
     private void disableSensors()
     {
+        this.mSensorsEnabled = false;
+        this.mHandler.removeCallbacks(this.mReregisterSensorRunnable);
         this.mEngine.disableOrientationSensor(this);
     }
 
-    private Color getRandomColor()
+    @Override
+    public void onFilteredOrientationChanged(final float pPitch, final float pRoll)
     {
-        return new Color(MathUtils.RANDOM.nextInt(255) / 255f, MathUtils.RANDOM.nextInt(255) / 255f, MathUtils.RANDOM.nextInt(255) / 255f);
+        this.mCurrentPitch = pPitch;
+        this.mCurrentRoll = pRoll;
+
+        final float combinedTilt = pPitch + pRoll;
+        final GridLayout layout = this.mLayout;
+        final ReflectLightEngine reflectLightEngine = layout != null ? layout.getReflectLightEngine() : null;
+        if (reflectLightEngine != null)
+        {
+            reflectLightEngine.setCombinedTilt(combinedTilt);
+        }
+
+        // Wake the engine from a low frame rate as soon as the device moves noticeably
+        if (Math.abs(combinedTilt - this.mLastFrameRequestTilt) >= 1f)
+        {
+            this.mLastFrameRequestTilt = combinedTilt;
+            getAdaptiveFPSEngine().requestFrame();
+        }
     }
 
-    private void resetScene()
+    @Override
+    public void onSensorDelayChanged(final SensorDelay pSensorDelay)
     {
-        this.mEngine.clearUpdateHandlers();
-        this.mEngine.getScene().detachChildren();
-        unloadParticleImage();
+        // Don't unregister the listener from inside its own callback
+        this.mHandler.removeCallbacks(this.mReregisterSensorRunnable);
+        this.mHandler.post(this.mReregisterSensorRunnable);
     }
 
-    private void buildScene(final Scene scene)
+    private AdaptiveFPSEngine getAdaptiveFPSEngine()
     {
-        loadParticleImage();
+        return (AdaptiveFPSEngine) this.mEngine;
+    }
 
-        switch (mMode)
+    /**
+     * Attaches a layout's particles and hooks them up to the engine. Its simulation is left for the caller to start.
+     */
+    private void showLayout(final GridLayout pLayout)
+    {
+        final GlimmerParticleSystem particleSystem = pLayout.getParticleSystem();
+        this.mEngine.getScene().attachChild(particleSystem);
+        getAdaptiveFPSEngine().addVisualChangeSource(particleSystem);
+        particleSystem.setFrameProfiler(this.mFrameProfiler);
+        particleSystem.setUpdateWorkers(this.mUpdateWorkers);
+        if (pLayout.getReflectLightEngine() != null)
         {
-            case GlimmerPreferenceActivity.PREFS_MODE_CHANGE_COLOUR:
-            default:
-                buildColourChangeScene(scene);
-                break;
-            case GlimmerPreferenceActivity.PREFS_MODE_REFLECT_LIGHT:
-                buildReflectLightScene(scene);
-                break;
-            case GlimmerPreferenceActivity.PREFS_MODE_STATIC_COLOUR:
-                buildStaticColourScene(scene);
-                break;
-
+            pLayout.getReflectLightEngine().setCombinedTilt(this.mCurrentPitch + this.mCurrentRoll);
         }
+        this.mCamera.set(0, 0, pLayout.getWidth(), pLayout.getHeight());
+        this.mLayout = pLayout;
+        // The particles are set up for the current tier at the next update
+        this.mAppliedPowerTier = -1;
+    }
 
-        if (mShowFps)
+    /**
+     * Stops and detaches the layout shown, which stays cached.
+     */
+    private void hideLayout()
+    {
+        final GridLayout layout = this.mLayout;
+        if (layout != null)
         {
-            buildFpsDisplay(scene);
+            final GlimmerParticleSystem particleSystem = layout.getParticleSystem();
+            particleSystem.getSimulation().stop();
+            getAdaptiveFPSEngine().removeVisualChangeSource(particleSystem);
+            particleSystem.detachSelf();
+            this.mLayout = null;
         }
     }
 
-    private void buildFpsDisplay(final Scene scene)
+    private void removeLayouts()
     {
-        DisplayMetrics metrics = this.getResources().getDisplayMetrics();
-        final int FPS_X = CAMERA_WIDTH;
-        final int FPS_Y = CAMERA_HEIGHT - (96 * metrics.densityDpi / 160); // Avoid navigation bar
-        final Text fpsText = new Text(FPS_X, FPS_Y, this.mFont, "0.0", 8, new TextOptions(HorizontalAlign.RIGHT), this.getVertexBufferObjectManager());
-        fpsText.setPosition(FPS_X - fpsText.getWidth(), FPS_Y);
-        scene.attachChild(fpsText);
-
-        this.mEngine.registerUpdateHandler( new AverageFPSCounter(5.0f)
+        hideLayout();
+        this.mLayoutCache.clear();
+        if (this.mParticleSeedKey != null)
         {
-            @Override
-            protected void onHandleAverageDurationElapsed(float pFPS)
-            {
-                fpsText.setText(String.valueOf(Math.round(pFPS * 10) / 10f)); // Round to one decimal
-                fpsText.setPosition(FPS_X - fpsText.getWidth(), FPS_Y); // Bottom right corner
-            }
-        });
+            SharedResources.release(this.mParticleSeedKey);
+            this.mParticleSeedKey = null;
+        }
     }
 
-    private void buildReflectLightScene(final Scene scene)
+    /**
+     * Builds and caches the particles for the current settings, laid out for a surface of the given size.
+     */
+    private GridLayout buildLayout(final int pWidth, final int pHeight)
     {
-        final GridParticleEmitter particleEmitter = new GridParticleEmitter(CAMERA_WIDTH * 0.5f,  CAMERA_HEIGHT * 0.5f, CAMERA_WIDTH, CAMERA_HEIGHT,
-                this.mParticleTextureRegion.getWidth(), this.mParticleTextureRegion.getHeight(), false);
-        final int maxParticles = particleEmitter.getGridTiles();
-        this.mParticleSystem = new BatchedSpriteParticleSystem(particleEmitter, maxParticles, maxParticles, maxParticles,
-                this.mParticleTextureRegion, this.getVertexBufferObjectManager());
-
-        this.mParticleSystem.addParticleInitializer(new ColorParticleInitializer<UncoloredSprite>(ColorUtils.convertARGBPackedIntToColor(
-                mStaticColour)));
-        this.mParticleSystem.addParticleInitializer(new RotationParticleInitializer<UncoloredSprite>(-90f, 90f));
-
-        this.mParticleSystem.addParticleModifier(new IParticleModifier<UncoloredSprite>()
+        this.mParticleTextureRegion = getDotTextureRegion(this.mSettings.getDotSize());
+        // Saved particles only fit if they were emitted from the same seed, which another engine may have picked first
+        final ParticleSnapshot snapshot = this.mPendingSnapshot != null && this.mPendingSnapshot.getSeed() == this.mParticleSeed
+                ? this.mPendingSnapshot : null;
+        this.mPendingSnapshot = null;
+
+        final GridScene scene;
+        if (this.mSettings.isLightweight() && this.mSettings.getMode() != GlimmerPreferenceActivity.PREFS_MODE_REFLECT_LIGHT)
         {
-            @Override
-            public void onUpdateParticle(Particle<UncoloredSprite> pParticle)
+            // Nothing to restore, as the dots are worked out from the clock
+            final GridParticleEmitter particleEmitter = createParticleEmitter(pWidth, pHeight, null);
+            if (this.mSettings.getMode() == GlimmerPreferenceActivity.PREFS_MODE_STATIC_COLOUR)
             {
-                UncoloredSprite sprite = pParticle.getEntity();
-                sprite.setAlpha(getAlphaFromRotation(sprite.getRotation(), GlimmerLiveWallpaper.this.mCurrentPitch + GlimmerLiveWallpaper.this.mCurrentRoll));
+                scene = GridScene.buildClosedFormStaticColour(particleEmitter, this.mSettings.getStaticColour());
             }
-
-            @Override
-            public void onInitializeParticle(Particle<UncoloredSprite> pParticle)
+            else
             {
-                UncoloredSprite sprite = pParticle.getEntity();
-                sprite.setAlpha(getAlphaFromRotation(sprite.getRotation(), 0));
+                scene = GridScene.buildClosedFormColourChange(particleEmitter, this.mSettings.getColourChangePeriod());
             }
-
-
-            private float getAlphaFromRotation(final float pParticleRotation, float pCombinedTilt)
+        }
+        else
+        {
+            final GridParticleEmitter particleEmitter = createParticleEmitter(pWidth, pHeight, snapshot);
+            switch (this.mSettings.getMode())
             {
-                // The closer the particle angle is to the tilt angle, the brighter it is.
-                // Can't really see screen if tilt is more than 45 degrees, so we clamp it.
-                // Maximum difference will be 180 degrees, so normalize then convert to alpha.
-                pCombinedTilt = MathUtils.bringToBounds(-90f, 90f, pCombinedTilt);
-                return MathUtils.bringToBounds(0.2f, 1f, 1f - Math.abs(pParticleRotation - pCombinedTilt) / 180f);
+                case GlimmerPreferenceActivity.PREFS_MODE_CHANGE_COLOUR:
+                default:
+                    scene = GridScene.buildColourChange(particleEmitter, this.mSettings.getColourChangePeriod(), snapshot);
+                    break;
+                case GlimmerPreferenceActivity.PREFS_MODE_REFLECT_LIGHT:
+                    scene = GridScene.buildReflectLight(particleEmitter, this.mSettings.getStaticColour(),
+                            this.mCurrentPitch + this.mCurrentRoll, snapshot);
+                    break;
+                case GlimmerPreferenceActivity.PREFS_MODE_STATIC_COLOUR:
+                    scene = GridScene.buildStaticColour(particleEmitter, this.mSettings.getStaticColour(), snapshot);
+                    break;
             }
-        });
-
-        scene.attachChild(this.mParticleSystem);
+        }
+        // Only drawing the scene needs the engine
+        final GlimmerParticleSystem particleSystem = new GlimmerParticleSystem(scene, this.mParticleTextureRegion,
+                this.getVertexBufferObjectManager());
+        final GridLayout layout = new GridLayout(pWidth, pHeight, getGridWidth(pWidth), scene, particleSystem);
+        this.mLayoutCache.put(layout);
+        return layout;
     }
 
-    private void buildStaticColourScene(final Scene scene)
+    /**
+     * @param pSnapshot if not null, the emitter carries on from where the snapshot's emitter had got to
+     */
+    private GridParticleEmitter createParticleEmitter(final int pWidth, final int pHeight, final ParticleSnapshot pSnapshot)
     {
-        final GridParticleEmitter particleEmitter = new GridParticleEmitter(CAMERA_WIDTH * 0.5f,  CAMERA_HEIGHT * 0.5f, CAMERA_WIDTH, CAMERA_HEIGHT,
-                this.mParticleTextureRegion.getWidth(), this.mParticleTextureRegion.getHeight(), false);
-        final int maxParticles = particleEmitter.getGridTiles();
-        this.mParticleSystem = new GlimmerParticleSystem(particleEmitter, 0.05f * maxParticles, maxParticles / PARTICLE_LIFETIME, maxParticles,
-                this.mParticleTextureRegion, this.getVertexBufferObjectManager());
-
-        ColorParticleInitializer<UncoloredSprite> colorParticleInitializer = new ColorParticleInitializer<UncoloredSprite>(ColorUtils.convertARGBPackedIntToColor(mStaticColour));
-        this.mParticleSystem.addParticleInitializer(colorParticleInitializer);
-        this.mParticleSystem.addParticleInitializer(new RotationParticleInitializer<UncoloredSprite>(-90f, 90f));
-        this.mParticleSystem.addParticleInitializer(new ExpireParticleInitializer<UncoloredSprite>(PARTICLE_LIFETIME));
-
-        this.mParticleSystem.addParticleModifier(new AlphaParticleModifier<UncoloredSprite>(0, PARTICLE_LIFETIME * 0.6666f, 0.3f, 1f));
-        this.mParticleSystem.addParticleModifier(
-                new AlphaParticleModifier<UncoloredSprite>(PARTICLE_LIFETIME * 0.6666f, PARTICLE_LIFETIME, 1f, 0.3f));
-
-        scene.attachChild(this.mParticleSystem);
+        // Centred on the screen either way, so that the middle home screen shows the middle of a wider grid
+        final GridParticleEmitter particleEmitter = new GridParticleEmitter(pWidth * 0.5f, pHeight * 0.5f, getGridWidth(pWidth), pHeight,
+                this.mParticleTextureRegion.getWidth(), this.mParticleTextureRegion.getHeight(), false, this.mParticleSeed);
+        if (pSnapshot != null)
+        {
+            particleEmitter.setFillState(pSnapshot.getFillState());
+        }
+        return particleEmitter;
     }
 
-    private void buildColourChangeScene(final Scene scene)
+    /**
+     * @return how wide the grid is for a surface this wide, which is wider with Scroll on
+     */
+    private float getGridWidth(final int pWidth)
     {
-        final GridParticleEmitter particleEmitter = new GridParticleEmitter(CAMERA_WIDTH * 0.5f,  CAMERA_HEIGHT * 0.5f, CAMERA_WIDTH, CAMERA_HEIGHT,
-                this.mParticleTextureRegion.getWidth(), this.mParticleTextureRegion.getHeight(), false);
-        final int maxParticles = particleEmitter.getGridTiles();
-        this.mParticleSystem = new GlimmerParticleSystem(particleEmitter, 0.05f * maxParticles, maxParticles / PARTICLE_LIFETIME, maxParticles,
-                this.mParticleTextureRegion, this.getVertexBufferObjectManager());
-
-        Color initialColor = getRandomColor();
-        MutableColorParticleInitializer<UncoloredSprite> colorParticleInitializer = new MutableColorParticleInitializer<UncoloredSprite>(initialColor);
-        this.mParticleSystem.addParticleInitializer(colorParticleInitializer);
-        this.mParticleSystem.addParticleInitializer(new RotationParticleInitializer<UncoloredSprite>(-90f, 90f));
-        this.mParticleSystem.addParticleInitializer(new ExpireParticleInitializer<UncoloredSprite>(PARTICLE_LIFETIME));
-
-        this.mParticleSystem.addParticleModifier(new AlphaParticleModifier<UncoloredSprite>(0, PARTICLE_LIFETIME * 0.6666f, 0.3f, 1f));
-        this.mParticleSystem.addParticleModifier(new AlphaParticleModifier<UncoloredSprite>(PARTICLE_LIFETIME * 0.6666f, PARTICLE_LIFETIME, 1f, 0.3f));
-
-        this.mEngine.registerUpdateHandler(new TimerHandler(mColourChangePeriod, true,
-                new ChangingColorParticleInitializerTimerHandler(initialColor, colorParticleInitializer)));
+        return this.mSettings.isScroll() ? pWidth * SCROLL_WIDTH_SCREENS : pWidth;
+    }
 
-        scene.attachChild(this.mParticleSystem);
+    private void buildFpsDisplay()
+    {
+        DisplayMetrics metrics = this.getResources().getDisplayMetrics();
+        final int FPS_MARGIN_BOTTOM = 96 * metrics.densityDpi / 160; // Avoid navigation bar
+        final Camera camera = this.mCamera;
+        final Text fpsText = new Text(0, 0, this.mFont, "0.0", 96, new TextOptions(HorizontalAlign.RIGHT), this.getVertexBufferObjectManager());
+        fpsText.setPosition(camera.getWidth() - fpsText.getWidth(), camera.getHeight() - FPS_MARGIN_BOTTOM);
+        this.mCamera.getHUD().attachChild(fpsText);
+        this.mFpsText = fpsText;
+
+        final FrameProfiler frameProfiler = new FrameProfiler();
+        setFrameProfiler(frameProfiler);
+
+        final StringBuilder fpsString = new StringBuilder(96);
+        this.mFpsCounter = new AverageFPSCounter(5.0f)
+        {
+            @Override
+            protected void onHandleAverageDurationElapsed(float pFPS)
+            {
+                // Measured rate and the rate the engine is currently aiming for
+                FpsFormatter.format(fpsString, pFPS, getAdaptiveFPSEngine().getEffectiveFramesPerSecond());
+                FpsFormatter.appendTier(fpsString, GlimmerLiveWallpaper.this.mPowerGovernor.getTier(), GlimmerLiveWallpaper.this.mPowerGovernor.getReason());
+                // Frame times since resuming, so that a single stall shows up instead of being averaged away
+                FpsFormatter.appendFrameTimes(fpsString, frameProfiler);
+                fpsText.setText(fpsString);
+                // Bottom right corner, of whichever way round the surface is now
+                fpsText.setPosition(camera.getWidth() - fpsText.getWidth(), camera.getHeight() - FPS_MARGIN_BOTTOM);
+            }
+        };
+        this.mEngine.registerUpdateHandler(this.mFpsCounter);
     }
 
-    private class ChangingColorParticleInitializerTimerHandler implements ITimerCallback
+    private void removeFpsDisplay()
     {
-        private int mCurrentParticleColorARGB;
-        private float hsv[] = new float[3];
-        private MutableColorParticleInitializer<UncoloredSprite> mCurrentParticleInitializer;
+        if (this.mFpsText != null)
+        {
+            this.mEngine.unregisterUpdateHandler(this.mFpsCounter);
+            this.mFpsText.detachSelf();
+            this.mFpsText.dispose();
+            this.mFpsText = null;
+            this.mFpsCounter = null;
+            setFrameProfiler(null);
+        }
+    }
 
-        public ChangingColorParticleInitializerTimerHandler(final Color pColor, final MutableColorParticleInitializer<UncoloredSprite> pInitializer)
+    private void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+        getAdaptiveFPSEngine().setFrameProfiler(pFrameProfiler);
+        this.mOrientationListener.setFrameProfiler(pFrameProfiler);
+        if (this.mLayout != null)
         {
-            this.mCurrentParticleInitializer = pInitializer;
-            this.mCurrentParticleColorARGB = pColor.getARGBPackedInt();
+            // Layouts not shown get it when they are swapped in
+            this.mLayout.getParticleSystem().setFrameProfiler(pFrameProfiler);
         }
+    }
 
-        @Override
-        public void onTimePassed(TimerHandler pTimerHandler)
+    /**
+     * Writes what the frame profiler recorded since resuming, if the FPS overlay is shown, to a file that can be
+     * pulled off the device, e.g. with adb pull /sdcard/Android/data/com.github.efung.glimmer/files/frame-profile.txt
+     */
+    private void writeFrameProfile()
+    {
+        if (this.mFrameProfiler == null)
         {
-            android.graphics.Color.colorToHSV(this.mCurrentParticleColorARGB, hsv);
+            return;
+        }
 
-            // Perturb values by hue, avoiding overly dark or bright colours
-            hsv[0] += MathUtils.randomSign() * (MathUtils.RANDOM.nextFloat() * 20.0f + 10.0f); // between 10 and 30 degrees
-            if (hsv[0] > 360f) {
-                hsv[0] -= 360f;
+        File directory = this.getExternalFilesDir(null);
+        if (directory == null)
+        {
+            directory = this.getFilesDir();
+        }
+        final File file = new File(directory, FRAME_PROFILE_FILENAME);
+        try
+        {
+            final PrintWriter writer = new PrintWriter(new FileWriter(file));
+            try
+            {
+                this.mFrameProfiler.writeReport(writer);
             }
-            else if (hsv[0] < 0f) {
-                hsv[0] += 360f;
+            finally
+            {
+                writer.close();
             }
-            hsv[1] = MathUtils.bringToBounds(0.4f, 0.7f, hsv[1] + MathUtils.randomSign() * 0.1f);
-            hsv[2] = MathUtils.bringToBounds(0.4f, 0.7f, hsv[2] + MathUtils.randomSign() * 0.1f);
-
-            this.mCurrentParticleColorARGB = android.graphics.Color.HSVToColor(hsv);
-
-            final float r = android.graphics.Color.red(this.mCurrentParticleColorARGB) / 255f;
-            final float g = android.graphics.Color.green(this.mCurrentParticleColorARGB) / 255f;
-            final float b = android.graphics.Color.blue(this.mCurrentParticleColorARGB) / 255f;
-
-            this.mCurrentParticleInitializer.setColor(r, r, g, g, b, b);
+            Log.i(TAG, "Wrote frame profile to " + file);
+        }
+        catch (final IOException e)
+        {
+            Log.w(TAG, "Couldn't write frame profile", e);
         }
     }
 }
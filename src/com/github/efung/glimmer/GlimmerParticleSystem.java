@@ -1,15 +1,23 @@
 package com.github.efung.glimmer;
 
+import org.andengine.engine.camera.Camera;
 import org.andengine.entity.particle.BatchedSpriteParticleSystem;
 import org.andengine.entity.particle.emitter.IParticleEmitter;
 import org.andengine.opengl.texture.region.ITextureRegion;
+import org.andengine.opengl.util.GLState;
 import org.andengine.opengl.vbo.VertexBufferObjectManager;
 
 
-public class GlimmerParticleSystem extends BatchedSpriteParticleSystem
+public class GlimmerParticleSystem extends BatchedSpriteParticleSystem implements IVisualChangeSource
 {
     private float mRateMaximum;
 
+    // Only set in structure-of-arrays mode, in which case no Particle objects are ever created.
+    private ParticleStore mParticleStore;
+    // Also set in closed-form mode, which has no particles at all
+    private ParticleSimulation mSimulation;
+    private StaticGridRenderer mGridRenderer;
+
     public GlimmerParticleSystem(IParticleEmitter pParticleEmitter, float pRateMinimum, float pRateMaximum, int pParticlesMaximum, ITextureRegion pTextureRegion, VertexBufferObjectManager pVertexBufferObjectManager)
     {
         super(pParticleEmitter, pRateMinimum, pRateMaximum, pParticlesMaximum, pTextureRegion,
@@ -24,6 +32,124 @@ public class GlimmerParticleSystem extends BatchedSpriteParticleSystem
         this.mRateMaximum = pRateMaximum;
     }
 
+    /**
+     * Creates a particle system that draws a scene with a {@link StaticGridRenderer}, in structure-of-arrays mode if
+     * it has a {@link ParticleStore}, or in closed-form mode if it has a {@link ClosedFormAnimation}. Either way its
+     * particles are configured through the scene rather than {@link #addParticleInitializer} and
+     * {@link #addParticleModifier}, so the SpriteBatch inherited from BatchedSpriteParticleSystem is only given room
+     * for a single sprite.
+     */
+    public GlimmerParticleSystem(GridScene pScene, ITextureRegion pTextureRegion, VertexBufferObjectManager pVertexBufferObjectManager)
+    {
+        super(pScene.getParticleEmitter(), 0f, 0f, 1, pTextureRegion, pVertexBufferObjectManager);
+        this.mParticleStore = pScene.getParticleStore();
+        this.mSimulation = pScene.getSimulation();
+        this.mGridRenderer = new StaticGridRenderer(pScene.getParticleEmitter(), pTextureRegion);
+        super.setParticlesSpawnEnabled(false);
+    }
+
+    /**
+     * @return the store in structure-of-arrays mode, otherwise null
+     */
+    public ParticleStore getParticleStore()
+    {
+        return this.mParticleStore;
+    }
+
+    /**
+     * @return what steps the particle store in structure-of-arrays mode, or the animation in closed-form mode, on a
+     * thread of its own once started
+     */
+    public ParticleSimulation getSimulation()
+    {
+        return this.mSimulation;
+    }
+
+    /**
+     * Limits updating and drawing to a range of tiles in structure-of-arrays mode. Can be called from any thread.
+     */
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd)
+    {
+        if (this.mSimulation != null)
+        {
+            this.mSimulation.setVisibleTiles(pFirstTile, pTilesEnd);
+        }
+    }
+
+    /**
+     * @return the store's or the animation's rate of change in structure-of-arrays or closed-form mode. Otherwise
+     * modifiers can't be inspected, so the system is assumed to always change as fast as it is drawn.
+     */
+    @Override
+    public float getVisualChangeRate()
+    {
+        if (this.mSimulation != null)
+        {
+            return this.mSimulation.getAnimation().getVisualChangeRate();
+        }
+        return Float.MAX_VALUE;
+    }
+
+    /**
+     * @param pFrameProfiler receives the time spent on particles in structure-of-arrays or closed-form mode, or null
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        if (this.mSimulation != null)
+        {
+            this.mSimulation.setFrameProfiler(pFrameProfiler);
+            this.mGridRenderer.setFrameProfiler(pFrameProfiler);
+        }
+    }
+
+    /**
+     * @param pUpdateWorkers shares the per-frame particle update of large grids across cores in structure-of-arrays
+     *                       mode, or null to update on the engine's update thread alone
+     */
+    public void setUpdateWorkers(final ParticleUpdateWorkers pUpdateWorkers)
+    {
+        if (this.mParticleStore != null)
+        {
+            this.mParticleStore.setUpdateWorkers(pUpdateWorkers);
+        }
+    }
+
+    public void setNotLoadedToHardware()
+    {
+        if (this.mGridRenderer != null)
+        {
+            this.mGridRenderer.setNotLoadedToHardware();
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        super.dispose();
+
+        if (this.mSimulation != null)
+        {
+            this.mSimulation.stop();
+        }
+        if (this.mGridRenderer != null)
+        {
+            this.mGridRenderer.release();
+        }
+    }
+
+    @Override
+    public void setParticlesSpawnEnabled(final boolean pParticlesSpawnEnabled)
+    {
+        if (this.mParticleStore != null)
+        {
+            this.mParticleStore.setParticlesSpawnEnabled(pParticlesSpawnEnabled);
+        }
+        else if (this.mSimulation == null)
+        {
+            super.setParticlesSpawnEnabled(pParticlesSpawnEnabled);
+        }
+    }
+
     @Override
     protected float determineCurrentRate() {
         // Stop particle spawning if we're close to maximum. Once we reach mParticlesMaximum,
@@ -37,4 +163,35 @@ public class GlimmerParticleSystem extends BatchedSpriteParticleSystem
         return super.determineCurrentRate();
     }
 
+    @Override
+    protected void onManagedUpdate(final float pSecondsElapsed)
+    {
+        super.onManagedUpdate(pSecondsElapsed);
+
+        if (this.mSimulation != null)
+        {
+            this.mSimulation.advance(pSecondsElapsed);
+        }
+    }
+
+    @Override
+    protected void onManagedDraw(final GLState pGLState, final Camera pCamera)
+    {
+        if (this.mSimulation == null)
+        {
+            super.onManagedDraw(pGLState, pCamera);
+            return;
+        }
+
+        // Only ever the latest finished state, however far along the simulation is with the next one
+        final RenderState newRenderState = this.mSimulation.acquireNewRenderState();
+        if (newRenderState != null)
+        {
+            this.mGridRenderer.draw(pGLState, newRenderState, true);
+        }
+        else
+        {
+            this.mGridRenderer.draw(pGLState, this.mSimulation.getRenderState(), false);
+        }
+    }
 }
@@ -27,6 +27,8 @@ public class GlimmerPreferenceActivity extends PreferenceActivity
     public static final int PREFS_SINGLE_COLOUR_DEFAULT = 0xFFF5DEB3;
 
     public static final boolean PREFS_SHOW_FPS_DEFAULT = false;
+    public static final boolean PREFS_SCROLL_DEFAULT = false;
+    public static final boolean PREFS_LIGHTWEIGHT_DEFAULT = false;
 
     private ColorPickerPreference mSingleColourPreference;
     private SeekBarPreference mColourChangePeriodPref;
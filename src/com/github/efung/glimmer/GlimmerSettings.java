@@ -0,0 +1,151 @@
+package com.github.efung.glimmer;
+
+/**
+ * An immutable snapshot of the wallpaper's preferences. {@link #diff} tells which of them differ, so that only the
+ * affected parts of the scene need to change.
+ *
+ * Each snapshot published by a {@link SettingsStore} has a higher version than the one before, so whether anything
+ * may have changed is a single comparison. The version plays no part in {@link #diff} or {@link #equals}.
+ */
+public class GlimmerSettings
+{
+    public static final int CHANGED_MODE = 1 << 0;
+    public static final int CHANGED_DOT_SIZE = 1 << 1;
+    public static final int CHANGED_COLOUR_CHANGE_PERIOD = 1 << 2;
+    public static final int CHANGED_STATIC_COLOUR = 1 << 3;
+    public static final int CHANGED_SHOW_FPS = 1 << 4;
+    public static final int CHANGED_SCROLL = 1 << 5;
+    public static final int CHANGED_LIGHTWEIGHT = 1 << 6;
+    public static final int CHANGED_ALL = CHANGED_MODE | CHANGED_DOT_SIZE | CHANGED_COLOUR_CHANGE_PERIOD
+            | CHANGED_STATIC_COLOUR | CHANGED_SHOW_FPS | CHANGED_SCROLL | CHANGED_LIGHTWEIGHT;
+
+    private final int mVersion;
+    private final int mMode;
+    private final int mDotSize;
+    private final float mColourChangePeriod;
+    private final int mStaticColour; // ARGB packed
+    private final boolean mShowFps;
+    private final boolean mScroll;
+    private final boolean mLightweight;
+
+    public GlimmerSettings(final int pVersion, final int pMode, final int pDotSize, final float pColourChangePeriod, final int pStaticColour, final boolean pShowFps, final boolean pScroll, final boolean pLightweight)
+    {
+        this.mVersion = pVersion;
+        this.mMode = pMode;
+        this.mDotSize = pDotSize;
+        this.mColourChangePeriod = pColourChangePeriod;
+        this.mStaticColour = pStaticColour;
+        this.mShowFps = pShowFps;
+        this.mScroll = pScroll;
+        this.mLightweight = pLightweight;
+    }
+
+    public int getVersion()
+    {
+        return this.mVersion;
+    }
+
+    public int getMode()
+    {
+        return this.mMode;
+    }
+
+    public int getDotSize()
+    {
+        return this.mDotSize;
+    }
+
+    public float getColourChangePeriod()
+    {
+        return this.mColourChangePeriod;
+    }
+
+    public int getStaticColour()
+    {
+        return this.mStaticColour;
+    }
+
+    public boolean isShowFps()
+    {
+        return this.mShowFps;
+    }
+
+    /**
+     * @return whether the dots are wider than the screen and scroll along with the home screens
+     */
+    public boolean isScroll()
+    {
+        return this.mScroll;
+    }
+
+    /**
+     * @return whether Static Colour and Change Colour modes compute each dot from the time instead of simulating it
+     * (see {@link ClosedFormAnimation})
+     */
+    public boolean isLightweight()
+    {
+        return this.mLightweight;
+    }
+
+    /**
+     * @param pPrevious settings to compare with, or null if there were none, in which case everything has changed.
+     * @return the CHANGED_* flags of every setting that differs
+     */
+    public int diff(final GlimmerSettings pPrevious)
+    {
+        if (pPrevious == null)
+        {
+            return CHANGED_ALL;
+        }
+
+        int changes = 0;
+        if (this.mMode != pPrevious.mMode)
+        {
+            changes |= CHANGED_MODE;
+        }
+        if (this.mDotSize != pPrevious.mDotSize)
+        {
+            changes |= CHANGED_DOT_SIZE;
+        }
+        if (this.mColourChangePeriod != pPrevious.mColourChangePeriod)
+        {
+            changes |= CHANGED_COLOUR_CHANGE_PERIOD;
+        }
+        if (this.mStaticColour != pPrevious.mStaticColour)
+        {
+            changes |= CHANGED_STATIC_COLOUR;
+        }
+        if (this.mShowFps != pPrevious.mShowFps)
+        {
+            changes |= CHANGED_SHOW_FPS;
+        }
+        if (this.mScroll != pPrevious.mScroll)
+        {
+            changes |= CHANGED_SCROLL;
+        }
+        if (this.mLightweight != pPrevious.mLightweight)
+        {
+            changes |= CHANGED_LIGHTWEIGHT;
+        }
+        return changes;
+    }
+
+    @Override
+    public boolean equals(final Object pOther)
+    {
+        return pOther instanceof GlimmerSettings && diff((GlimmerSettings) pOther) == 0;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = this.mMode;
+        hash = 31 * hash + this.mDotSize;
+        hash = 31 * hash + Float.floatToIntBits(this.mColourChangePeriod);
+        hash = 31 * hash + this.mStaticColour;
+        hash = 31 * hash + (this.mShowFps ? 1 : 0);
+        hash = 31 * hash + (this.mScroll ? 1 : 0);
+        hash = 31 * hash + (this.mLightweight ? 1 : 0);
+        return hash;
+    }
+}
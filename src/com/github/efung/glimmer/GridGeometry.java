@@ -0,0 +1,123 @@
+package com.github.efung.glimmer;
+
+import org.andengine.opengl.texture.region.ITextureRegion;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * What a {@link StaticGridRenderer} uploads once and never changes: a quad per tile, with its position, rotation and
+ * texture coordinates, and the indices of one batch of quads. Nothing is written after building, so renderers in
+ * different GL contexts share one through {@link SharedResources}, each uploading it to buffers of its own.
+ */
+public class GridGeometry
+{
+    private final int mGridTiles;
+    private final FloatBuffer mGeometry;
+    private final ShortBuffer mIndices;
+
+    public GridGeometry(final ITileEmitter pEmitter, final ITextureRegion pTextureRegion)
+    {
+        this.mGridTiles = pEmitter.getGridTiles();
+
+        this.mGeometry = ByteBuffer.allocateDirect(this.mGridTiles * StaticGridRenderer.VERTICES_PER_TILE * StaticGridRenderer.GEOMETRY_STRIDE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buildGeometry(pEmitter, pTextureRegion);
+
+        final int batchTiles = Math.min(this.mGridTiles, StaticGridRenderer.TILES_PER_BATCH);
+        this.mIndices = ByteBuffer.allocateDirect(batchTiles * StaticGridRenderer.INDICES_PER_TILE * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < batchTiles; i++)
+        {
+            final int vertex = i * StaticGridRenderer.VERTICES_PER_TILE;
+            this.mIndices.put((short) vertex).put((short) (vertex + 1)).put((short) (vertex + 2));
+            this.mIndices.put((short) (vertex + 2)).put((short) (vertex + 1)).put((short) (vertex + 3));
+        }
+        this.mIndices.position(0);
+    }
+
+    /**
+     * @return the key under which geometry for this emitter's layout and texture region is shared
+     */
+    public static String getKey(final ITileEmitter pEmitter, final ITextureRegion pTextureRegion)
+    {
+        return "geometry:" + pEmitter.getLayoutKey() + "," + pTextureRegion.getWidth() + "x" + pTextureRegion.getHeight() + ","
+                + pTextureRegion.getU() + "," + pTextureRegion.getV() + "," + pTextureRegion.getU2() + "," + pTextureRegion.getV2();
+    }
+
+    /**
+     * @return the shared geometry for this emitter's layout and texture region, built if nothing holds it yet. Release
+     * it with {@link SharedResources#release} and {@link #getKey}.
+     */
+    public static GridGeometry acquire(final ITileEmitter pEmitter, final ITextureRegion pTextureRegion)
+    {
+        return SharedResources.acquire(getKey(pEmitter, pTextureRegion), new SharedResources.IFactory<GridGeometry>()
+        {
+            @Override
+            public GridGeometry create()
+            {
+                return new GridGeometry(pEmitter, pTextureRegion);
+            }
+        });
+    }
+
+    private void buildGeometry(final ITileEmitter pEmitter, final ITextureRegion pTextureRegion)
+    {
+        final float width = pTextureRegion.getWidth();
+        final float height = pTextureRegion.getHeight();
+        final float halfWidth = width * 0.5f;
+        final float halfHeight = height * 0.5f;
+        final float u = pTextureRegion.getU();
+        final float v = pTextureRegion.getV();
+        final float u2 = pTextureRegion.getU2();
+        final float v2 = pTextureRegion.getV2();
+
+        final FloatBuffer geometry = this.mGeometry;
+        for (int tile = 0; tile < this.mGridTiles; tile++)
+        {
+            // Quads are rotated around their centre, as SpriteBatch does
+            final float rotation = (float) Math.toRadians(pEmitter.getTileRotation(tile));
+            final float cos = (float) Math.cos(rotation);
+            final float sin = (float) Math.sin(rotation);
+            final float centerX = pEmitter.getTileX(tile) + halfWidth;
+            final float centerY = pEmitter.getTileY(tile) + halfHeight;
+
+            putVertex(geometry, centerX, centerY, -halfWidth, -halfHeight, cos, sin, u, v);
+            putVertex(geometry, centerX, centerY, -halfWidth, halfHeight, cos, sin, u, v2);
+            putVertex(geometry, centerX, centerY, halfWidth, -halfHeight, cos, sin, u2, v);
+            putVertex(geometry, centerX, centerY, halfWidth, halfHeight, cos, sin, u2, v2);
+        }
+        geometry.position(0);
+    }
+
+    private static void putVertex(final FloatBuffer pGeometry, final float pCenterX, final float pCenterY, final float pDX, final float pDY,
+                                  final float pCos, final float pSin, final float pU, final float pV)
+    {
+        pGeometry.put(pCenterX + pDX * pCos - pDY * pSin);
+        pGeometry.put(pCenterY + pDX * pSin + pDY * pCos);
+        pGeometry.put(pU);
+        pGeometry.put(pV);
+    }
+
+    public int getGridTiles()
+    {
+        return this.mGridTiles;
+    }
+
+    /**
+     * @return a view of the quads, with a position of its own, so that several GL threads can upload them at once
+     */
+    public FloatBuffer getGeometry()
+    {
+        return this.mGeometry.duplicate();
+    }
+
+    /**
+     * @return a view of the indices of one batch, with a position of its own
+     */
+    public ShortBuffer getIndices()
+    {
+        return this.mIndices.duplicate();
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.efung.glimmer;
+
+/**
+ * The particles built for one surface size: the {@link GridScene} laid out for that size, with the stages that
+ * settings changes reach into, and the particle system that draws it. Kept in a
+ * {@link GridLayoutCache}, so that turning the device between portrait and landscape only swaps layouts.
+ */
+public class GridLayout
+{
+    private final int mWidth;
+    private final int mHeight;
+    private final float mGridWidth;
+    private final GridScene mScene;
+    private final GlimmerParticleSystem mParticleSystem;
+
+    /**
+     * @param pGridWidth width of the grid, which may be wider than the surface
+     */
+    public GridLayout(final int pWidth, final int pHeight, final float pGridWidth, final GridScene pScene,
+                      final GlimmerParticleSystem pParticleSystem)
+    {
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+        this.mGridWidth = pGridWidth;
+        this.mScene = pScene;
+        this.mParticleSystem = pParticleSystem;
+    }
+
+    public int getWidth()
+    {
+        return this.mWidth;
+    }
+
+    public int getHeight()
+    {
+        return this.mHeight;
+    }
+
+    public boolean isForSize(final int pWidth, final int pHeight)
+    {
+        return this.mWidth == pWidth && this.mHeight == pHeight;
+    }
+
+    public float getGridWidth()
+    {
+        return this.mGridWidth;
+    }
+
+    public GridParticleEmitter getParticleEmitter()
+    {
+        return this.mScene.getParticleEmitter();
+    }
+
+    public GlimmerParticleSystem getParticleSystem()
+    {
+        return this.mParticleSystem;
+    }
+
+    /**
+     * @return the particles' store, or null if the layout has a {@link ClosedFormAnimation} instead
+     */
+    public ParticleStore getParticleStore()
+    {
+        return this.mScene.getParticleStore();
+    }
+
+    public ReflectLightEngine getReflectLightEngine()
+    {
+        return this.mScene.getReflectLightEngine();
+    }
+
+    public StoreColorInitializer getStaticColorInitializer()
+    {
+        return this.mScene.getStaticColorInitializer();
+    }
+
+    public ColorTrajectoryUpdateHandler getColorTrajectoryHandler()
+    {
+        return this.mScene.getColorTrajectoryHandler();
+    }
+
+    /**
+     * @return the animation with Lightweight animation on, otherwise null
+     */
+    public ClosedFormAnimation getClosedFormAnimation()
+    {
+        return this.mScene.getClosedFormAnimation();
+    }
+
+    /**
+     * @return how far along its colours Change Colour mode has got, or 0 in other modes
+     */
+    public float getClockSeconds()
+    {
+        final ColorTrajectoryUpdateHandler colorTrajectoryHandler = this.mScene.getColorTrajectoryHandler();
+        return colorTrajectoryHandler != null ? colorTrajectoryHandler.getSecondsElapsed() : 0f;
+    }
+
+    /**
+     * Moves Change Colour mode along to the given point, so that a layout shown again carries on from where the one
+     * it replaces had got to. Only while its simulation is stopped.
+     */
+    public void setClockSeconds(final float pClockSeconds)
+    {
+        final ColorTrajectoryUpdateHandler colorTrajectoryHandler = this.mScene.getColorTrajectoryHandler();
+        if (colorTrajectoryHandler != null)
+        {
+            colorTrajectoryHandler.setSecondsElapsed(pClockSeconds);
+        }
+    }
+
+    /**
+     * Stops the simulation, releases the render buffers and lets go of shared resources. The particle system must
+     * already be detached.
+     */
+    public void dispose()
+    {
+        this.mParticleSystem.dispose();
+        this.mScene.release();
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.efung.glimmer;
+
+/**
+ * A few {@link GridLayout}s, looked up by surface size and evicted least recently used first. Two are enough for a
+ * device turned between portrait and landscape.
+ *
+ * The layout put last is taken to be the one shown, so it is never the one evicted. Methods are synchronized, as the
+ * GL thread marks layouts as not loaded while the update thread may be swapping them.
+ */
+public class GridLayoutCache
+{
+    private final GridLayout[] mLayouts; // Most recently put first
+    private int mLayoutCount;
+
+    public GridLayoutCache(final int pCapacity)
+    {
+        this.mLayouts = new GridLayout[pCapacity];
+    }
+
+    /**
+     * @return the layout built for this size, or null
+     */
+    public synchronized GridLayout get(final int pWidth, final int pHeight)
+    {
+        for (int i = 0; i < this.mLayoutCount; i++)
+        {
+            if (this.mLayouts[i].isForSize(pWidth, pHeight))
+            {
+                return this.mLayouts[i];
+            }
+        }
+        return null;
+    }
+
+    public synchronized int getLayoutCount()
+    {
+        return this.mLayoutCount;
+    }
+
+    public synchronized GridLayout getLayout(final int pIndex)
+    {
+        return this.mLayouts[pIndex];
+    }
+
+    /**
+     * Adds a layout, or marks it as used most recently if already cached. Any other layout for the same size is
+     * replaced, and the least recently used one is disposed if the cache is full.
+     */
+    public synchronized void put(final GridLayout pLayout)
+    {
+        final GridLayout[] layouts = this.mLayouts;
+        int index = 0;
+        while (index < this.mLayoutCount && layouts[index] != pLayout && !layouts[index].isForSize(pLayout.getWidth(), pLayout.getHeight()))
+        {
+            index++;
+        }
+
+        if (index == this.mLayoutCount)
+        {
+            if (this.mLayoutCount == layouts.length)
+            {
+                index = this.mLayoutCount - 1;
+                layouts[index].dispose();
+            }
+            else
+            {
+                this.mLayoutCount++;
+            }
+        }
+        else if (layouts[index] != pLayout)
+        {
+            layouts[index].dispose();
+        }
+
+        System.arraycopy(layouts, 0, layouts, 1, index);
+        layouts[0] = pLayout;
+    }
+
+    /**
+     * Disposes every layout. The one shown, if any, must already be detached.
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < this.mLayoutCount; i++)
+        {
+            this.mLayouts[i].dispose();
+            this.mLayouts[i] = null;
+        }
+        this.mLayoutCount = 0;
+    }
+
+    /**
+     * For a new GL context: every layout's render buffers are loaded again when next drawn.
+     */
+    public synchronized void setNotLoadedToHardware()
+    {
+        for (int i = 0; i < this.mLayoutCount; i++)
+        {
+            this.mLayouts[i].getParticleSystem().setNotLoadedToHardware();
+        }
+    }
+}
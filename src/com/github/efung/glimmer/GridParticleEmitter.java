@@ -1,79 +1,173 @@
 package com.github.efung.glimmer;
 
-import android.util.FloatMath;
 import org.andengine.entity.particle.emitter.BaseRectangleParticleEmitter;
 import org.andengine.util.math.MathUtils;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Random;
 
 import static org.andengine.util.Constants.VERTEX_INDEX_X;
 import static org.andengine.util.Constants.VERTEX_INDEX_Y;
 
-public class GridParticleEmitter extends BaseRectangleParticleEmitter
+/**
+ * Emits particles on a grid of tiles. Tile coordinates are computed from the tile index, and the fill order is a
+ * {@link TilePermutation}, so the emitter takes constant memory and is built instantly at any resolution.
+ *
+ * In random fill mode, tiles handed out by {@link #nextTile()} are tracked in a {@link TileOccupancy} until
+ * released, so dots never stack on top of each other.
+ */
+public class GridParticleEmitter extends BaseRectangleParticleEmitter implements ITileEmitter
 {
     protected int mGridTiles;
     private boolean mRandomFill = true;
-    private float mGridCoordsX[];
-    private float mGridCoordsY[];
-    private Integer mIndices[];
-    private int mCurrentIndex = 0;
+    private final int mGridTilesY;
+    private final float mGridWidth;
+    private final float mGridHeight;
+    private final float mLeft;
+    private final float mTop;
+    private final TilePermutation mPermutation;
+    private final TileOccupancy mOccupancy;
+    private final Random mRandom;
+    private final long mSeed;
+    private final int mRotationSeed;
 
     public GridParticleEmitter(final float pCenterX, final float pCenterY, final float pWidth, final float pHeight, final float pGridWidth, final float pGridHeight) {
         this(pCenterX, pCenterY, pWidth, pHeight, pGridWidth, pGridHeight, true);
     }
 
     public GridParticleEmitter(final float pCenterX, final float pCenterY, final float pWidth, final float pHeight, final float pGridWidth, final float pGridHeight, final boolean pRandomFill) {
+        this(pCenterX, pCenterY, pWidth, pHeight, pGridWidth, pGridHeight, pRandomFill, MathUtils.RANDOM.nextLong());
+    }
+
+    /**
+     * @param pSeed decides the fill order and each tile's rotation
+     */
+    public GridParticleEmitter(final float pCenterX, final float pCenterY, final float pWidth, final float pHeight, final float pGridWidth, final float pGridHeight, final boolean pRandomFill, final long pSeed) {
         super(pCenterX, pCenterY, pWidth, pHeight);
-        final int gridTilesX = Math.round(FloatMath.floor(pWidth / pGridWidth));
-        final int gridTilesY = Math.round(FloatMath.floor(pHeight / pGridHeight));
+        final int gridTilesX = (int) Math.floor(pWidth / pGridWidth);
+        final int gridTilesY = (int) Math.floor(pHeight / pGridHeight);
         this.mGridTiles = gridTilesX * gridTilesY;
         this.mRandomFill = pRandomFill;
 
-        this.mGridCoordsX = new float[this.mGridTiles];
-        this.mGridCoordsY = new float[this.mGridTiles];
-        this.mIndices = new Integer[this.mGridTiles];
+        // Tile gridTilesY * i + j is in column i, row j
+        this.mGridTilesY = gridTilesY;
+        this.mGridWidth = pGridWidth;
+        this.mGridHeight = pGridHeight;
+        this.mLeft = this.mCenterX - this.mWidthHalf;
+        this.mTop = this.mCenterY - this.mHeightHalf;
 
-        for (int i = 0; i < gridTilesX; i++)
-        {
-            for (int j = 0; j < gridTilesY; j++)
-            {
-                this.mGridCoordsX[gridTilesY * i + j] = this.mCenterX - this.mWidthHalf + i * pGridWidth;
-                this.mGridCoordsY[gridTilesY * i + j] = this.mCenterY - this.mHeightHalf + j * pGridHeight;
-                this.mIndices[gridTilesY * i + j] = gridTilesY * i + j;
-            }
-        }
+        this.mPermutation = new TilePermutation(this.mGridTiles, pSeed);
+        this.mRandom = new Random(pSeed);
+        this.mOccupancy = pRandomFill ? new TileOccupancy(this.mGridTiles) : null;
+        this.mSeed = pSeed;
+        this.mRotationSeed = (int) (pSeed ^ (pSeed >>> 32));
+    }
+
+    public long getSeed()
+    {
+        return this.mSeed;
+    }
+
+    /**
+     * @return where the sequential fill order has got to. An emitter built with the same grid and seed carries on
+     * from there after {@link #setFillState(int)}.
+     */
+    public int getFillState()
+    {
+        return this.mPermutation.getState();
+    }
 
-        shuffleArray(this.mIndices);
+    public void setFillState(final int pFillState)
+    {
+        this.mPermutation.setState(pFillState);
     }
 
+    /**
+     * Used by AndEngine's own particle systems, which don't report when particles expire, so random fill mode can't
+     * avoid occupied tiles here.
+     */
     @Override
     public void getPositionOffset(final float[] pOffset) {
+        final int tile = this.mRandomFill ? this.mRandom.nextInt(this.mGridTiles) : this.mPermutation.next();
+        pOffset[VERTEX_INDEX_X] = getTileX(tile);
+        pOffset[VERTEX_INDEX_Y] = getTileY(tile);
+    }
+
+    @Override
+    public int nextTile()
+    {
         if (this.mRandomFill)
         {
-            final int randomIndex = MathUtils.RANDOM.nextInt(this.mGridCoordsX.length);
-            pOffset[VERTEX_INDEX_X] = this.mGridCoordsX[randomIndex];
-            pOffset[VERTEX_INDEX_Y] = this.mGridCoordsY[randomIndex];
+            final int tile = this.mOccupancy.acquireRandom(this.mRandom);
+            // Only when more particles are alive than there are tiles
+            return tile >= 0 ? tile : this.mRandom.nextInt(this.mGridTiles);
         }
-        else
-        {
-            pOffset[VERTEX_INDEX_X] = this.mGridCoordsX[this.mIndices[this.mCurrentIndex]];
-            pOffset[VERTEX_INDEX_Y] = this.mGridCoordsY[this.mIndices[this.mCurrentIndex]];
 
-            this.mCurrentIndex++;
+        return this.mPermutation.next();
+    }
 
-            if (this.mCurrentIndex == this.mIndices.length)
-            {
-                this.mCurrentIndex = 0;
-            }
+    @Override
+    public void releaseTile(final int pTile)
+    {
+        if (this.mOccupancy != null)
+        {
+            this.mOccupancy.release(pTile);
         }
     }
 
-    private void shuffleArray(Integer pArray[])
+    @Override
+    public void occupyTiles(final int[] pTiles, final int pCount)
     {
-        Collections.shuffle(Arrays.asList(pArray));
+        if (this.mOccupancy != null)
+        {
+            this.mOccupancy.occupy(pTiles, pCount);
+        }
     }
 
+    @Override
+    public float getTileX(final int pTile)
+    {
+        return this.mLeft + (pTile / this.mGridTilesY) * this.mGridWidth;
+    }
+
+    @Override
+    public float getTileY(final int pTile)
+    {
+        return this.mTop + (pTile % this.mGridTilesY) * this.mGridHeight;
+    }
+
+    @Override
+    public float getTileRotation(final int pTile)
+    {
+        return -90f + 180f * TileHash.unit(this.mRotationSeed, pTile);
+    }
+
+    /**
+     * @return the first tile in the leftmost column that is at least partly right of pLeft. Tiles are numbered by
+     * column, so the tiles in view are always one contiguous range.
+     */
+    public int getFirstTileRightOf(final float pLeft)
+    {
+        final int column = (int) Math.floor((pLeft - this.mLeft) / this.mGridWidth);
+        return Math.max(0, Math.min(this.mGridTiles, column * this.mGridTilesY));
+    }
+
+    /**
+     * @return one past the last tile in the rightmost column that is at least partly left of pRight
+     */
+    public int getTilesEndLeftOf(final float pRight)
+    {
+        final int columns = (int) Math.ceil((pRight - this.mLeft) / this.mGridWidth);
+        return Math.max(0, Math.min(this.mGridTiles, columns * this.mGridTilesY));
+    }
+
+    @Override
+    public String getLayoutKey()
+    {
+        return "grid:" + this.mLeft + "," + this.mTop + "," + this.mGridWidth + "x" + this.mGridHeight + ","
+                + this.mGridTiles + "/" + this.mGridTilesY + "," + this.mRotationSeed;
+    }
+
+    @Override
     public int getGridTiles()
     {
         return mGridTiles;
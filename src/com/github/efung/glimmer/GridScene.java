@@ -0,0 +1,274 @@
+package com.github.efung.glimmer;
+
+import java.util.Random;
+
+/**
+ * Sets up what animates the dots of each of the wallpaper's modes on a grid: a {@link ParticleStore} with its
+ * initializers and modifiers, or a {@link ClosedFormAnimation}, the {@link ParticleSimulation} that steps it, and the
+ * stages that settings changes reach into. Needs no engine or GL, so that the desktop checks run the very scenes the
+ * wallpaper draws.
+ *
+ * The store's random numbers and the Change Colour colours are seeded from the emitter's seed, so a scene is the
+ * same every time it is built from the same emitter, and a restored scene carries on along the same colours.
+ */
+public class GridScene
+{
+    public static final float PARTICLE_LIFETIME = 9.0f;
+    // Spawn rates of the fading scenes, as fractions of the grid's tiles per second
+    public static final float FADING_RATE_MINIMUM = 0.05f;
+    public static final float FADING_RATE_MAXIMUM = 1f / PARTICLE_LIFETIME;
+    private static final float PREWARM_STEP_SECONDS = 0.25f;
+
+    private final GridParticleEmitter mParticleEmitter;
+    private final ParticleStore mParticleStore; // Unless closed-form
+    private final ClosedFormAnimation mClosedFormAnimation; // Closed-form only
+    private final ParticleSimulation mSimulation;
+
+    private StoreColorInitializer mStaticColorInitializer; // Static Colour and Reflect Light modes
+    private ColorTrajectoryUpdateHandler mColorTrajectoryHandler; // Change Colour mode
+    private ReflectLightEngine mReflectLightEngine; // Reflect Light mode
+    private String mColorTrajectoryKey; // Of the trajectory held in SharedResources, if any
+
+    private GridScene(final GridParticleEmitter pParticleEmitter, final ParticleStore pParticleStore,
+                      final ClosedFormAnimation pClosedFormAnimation)
+    {
+        this.mParticleEmitter = pParticleEmitter;
+        this.mParticleStore = pParticleStore;
+        this.mClosedFormAnimation = pClosedFormAnimation;
+        this.mSimulation = new ParticleSimulation(pParticleStore != null ? pParticleStore : pClosedFormAnimation);
+    }
+
+    /**
+     * @param pSnapshot particles to carry on from, or null to run the new scene until its dots have settled. The
+     *                  emitter must already carry on from the snapshot's too.
+     */
+    public static GridScene buildStaticColour(final GridParticleEmitter pParticleEmitter, final int pStaticColor,
+                                              final ParticleSnapshot pSnapshot)
+    {
+        final GridScene scene = new GridScene(pParticleEmitter, createFadingStore(pParticleEmitter), null);
+        final ParticleStore particleStore = scene.mParticleStore;
+        scene.mStaticColorInitializer = new StoreColorInitializer(pStaticColor);
+        particleStore.addParticleInitializer(scene.mStaticColorInitializer);
+        addFading(particleStore);
+
+        if (pSnapshot != null && pSnapshot.restore(particleStore))
+        {
+            // In case the colour was changed while the particles were saved
+            particleStore.setColors(pStaticColor);
+        }
+        else
+        {
+            prewarm(particleStore, null);
+        }
+        return scene;
+    }
+
+    /**
+     * @param pSnapshot as for {@link #buildStaticColour}, also restoring how far along its colours the scene was
+     */
+    public static GridScene buildColourChange(final GridParticleEmitter pParticleEmitter, final float pSecondsPerKeyframe,
+                                              final ParticleSnapshot pSnapshot)
+    {
+        final GridScene scene = new GridScene(pParticleEmitter, createFadingStore(pParticleEmitter), null);
+        final ParticleStore particleStore = scene.mParticleStore;
+
+        final Random random = new Random(pParticleEmitter.getSeed());
+        final int initialColor = getRandomColorARGB(random);
+        final StoreColorInitializer colorInitializer = new StoreColorInitializer(initialColor);
+        particleStore.addParticleInitializer(colorInitializer);
+        addFading(particleStore);
+
+        final ColorTrajectory colorTrajectory = scene.acquireColorTrajectory(initialColor, random.nextLong());
+        scene.mColorTrajectoryHandler = new ColorTrajectoryUpdateHandler(colorTrajectory, colorInitializer, pSecondsPerKeyframe);
+        if (pSnapshot != null && pSnapshot.restore(particleStore))
+        {
+            scene.mColorTrajectoryHandler.setSecondsElapsed(pSnapshot.getClockSeconds());
+        }
+        else
+        {
+            prewarm(particleStore, scene.mColorTrajectoryHandler);
+        }
+        // Steps along with the particles it colours
+        scene.mSimulation.addUpdateHandler(scene.mColorTrajectoryHandler);
+        return scene;
+    }
+
+    /**
+     * @param pCombinedTilt the device's pitch plus roll when the scene is built, in degrees
+     * @param pSnapshot     as for {@link #buildStaticColour}. Every tile fills within a second, so there is no prewarm.
+     */
+    public static GridScene buildReflectLight(final GridParticleEmitter pParticleEmitter, final int pStaticColor,
+                                              final float pCombinedTilt, final ParticleSnapshot pSnapshot)
+    {
+        final int maxParticles = pParticleEmitter.getGridTiles();
+        final ParticleStore particleStore = new ParticleStore(pParticleEmitter, maxParticles, maxParticles, maxParticles);
+        particleStore.setSeed(pParticleEmitter.getSeed());
+        final GridScene scene = new GridScene(pParticleEmitter, particleStore, null);
+
+        scene.mStaticColorInitializer = new StoreColorInitializer(pStaticColor);
+        particleStore.addParticleInitializer(scene.mStaticColorInitializer);
+        scene.mReflectLightEngine = new ReflectLightEngine();
+        scene.mReflectLightEngine.setCombinedTilt(pCombinedTilt);
+        particleStore.addParticleModifier(scene.mReflectLightEngine);
+
+        if (pSnapshot != null && pSnapshot.restore(particleStore))
+        {
+            // In case the colour was changed while the particles were saved
+            particleStore.setColors(pStaticColor);
+        }
+        return scene;
+    }
+
+    /**
+     * Static Colour with Lightweight animation on. There are no particles, so nothing to restore or prewarm.
+     */
+    public static GridScene buildClosedFormStaticColour(final GridParticleEmitter pParticleEmitter, final int pStaticColor)
+    {
+        final GridScene scene = new GridScene(pParticleEmitter, null, createClosedFormAnimation(pParticleEmitter));
+        scene.mClosedFormAnimation.setColor(pStaticColor);
+        return scene;
+    }
+
+    /**
+     * Change Colour with Lightweight animation on, going through the same colours as the simulated scene.
+     */
+    public static GridScene buildClosedFormColourChange(final GridParticleEmitter pParticleEmitter, final float pSecondsPerKeyframe)
+    {
+        final GridScene scene = new GridScene(pParticleEmitter, null, createClosedFormAnimation(pParticleEmitter));
+        final Random random = new Random(pParticleEmitter.getSeed());
+        final int initialColor = getRandomColorARGB(random);
+        scene.mClosedFormAnimation.setColorTrajectory(scene.acquireColorTrajectory(initialColor, random.nextLong()),
+                pSecondsPerKeyframe);
+        return scene;
+    }
+
+    /**
+     * @return alpha over a dot's lifetime in the fading scenes: brightening for two thirds of it, then fading
+     */
+    public static StoreAlphaModifier[] createAlphaSegments()
+    {
+        return new StoreAlphaModifier[] {
+                new StoreAlphaModifier(0, PARTICLE_LIFETIME * 0.6666f, 0.3f, 1f),
+                new StoreAlphaModifier(PARTICLE_LIFETIME * 0.6666f, PARTICLE_LIFETIME, 1f, 0.3f)
+        };
+    }
+
+    private static ParticleStore createFadingStore(final GridParticleEmitter pParticleEmitter)
+    {
+        final int maxParticles = pParticleEmitter.getGridTiles();
+        final ParticleStore particleStore = new ParticleStore(pParticleEmitter, FADING_RATE_MINIMUM * maxParticles,
+                FADING_RATE_MAXIMUM * maxParticles, maxParticles);
+        particleStore.setSeed(pParticleEmitter.getSeed());
+        return particleStore;
+    }
+
+    private static void addFading(final ParticleStore pParticleStore)
+    {
+        pParticleStore.addParticleInitializer(new StoreExpireInitializer(PARTICLE_LIFETIME));
+        final StoreAlphaModifier[] alphaSegments = createAlphaSegments();
+        for (int i = 0; i < alphaSegments.length; i++)
+        {
+            pParticleStore.addParticleModifier(alphaSegments[i]);
+        }
+    }
+
+    private static ClosedFormAnimation createClosedFormAnimation(final GridParticleEmitter pParticleEmitter)
+    {
+        // As many dots lit as the simulated scene settles at
+        final float occupancy = ParticleStore.getSteadyStateOccupancy(FADING_RATE_MINIMUM, FADING_RATE_MAXIMUM, PARTICLE_LIFETIME, 1);
+        return new ClosedFormAnimation(pParticleEmitter.getGridTiles(), pParticleEmitter.getSeed(), PARTICLE_LIFETIME,
+                occupancy, createAlphaSegments());
+    }
+
+    /**
+     * Runs a new scene until its dots have settled, instead of starting from a blank screen.
+     */
+    private static void prewarm(final ParticleStore pParticleStore, final ColorTrajectoryUpdateHandler pColorTrajectoryHandler)
+    {
+        for (float time = 0f; time < PARTICLE_LIFETIME; time += PREWARM_STEP_SECONDS)
+        {
+            if (pColorTrajectoryHandler != null)
+            {
+                pColorTrajectoryHandler.onUpdate(PREWARM_STEP_SECONDS);
+            }
+            pParticleStore.update(PREWARM_STEP_SECONDS);
+        }
+    }
+
+    private static int getRandomColorARGB(final Random pRandom)
+    {
+        return 0xFF000000 | (pRandom.nextInt(255) << 16) | (pRandom.nextInt(255) << 8) | pRandom.nextInt(255);
+    }
+
+    /**
+     * Precomputed colours only depend on the seed, so scenes and engines using the same one share them.
+     */
+    private ColorTrajectory acquireColorTrajectory(final int pInitialColor, final long pTrajectorySeed)
+    {
+        this.mColorTrajectoryKey = "trajectory:" + pInitialColor + "," + pTrajectorySeed;
+        return SharedResources.acquire(this.mColorTrajectoryKey, new SharedResources.IFactory<ColorTrajectory>()
+        {
+            @Override
+            public ColorTrajectory create()
+            {
+                return new ColorTrajectory(pInitialColor, pTrajectorySeed);
+            }
+        });
+    }
+
+    public GridParticleEmitter getParticleEmitter()
+    {
+        return this.mParticleEmitter;
+    }
+
+    /**
+     * @return the particles' store, or null if the scene is closed-form
+     */
+    public ParticleStore getParticleStore()
+    {
+        return this.mParticleStore;
+    }
+
+    /**
+     * @return the closed-form animation, or null if the scene has particles
+     */
+    public ClosedFormAnimation getClosedFormAnimation()
+    {
+        return this.mClosedFormAnimation;
+    }
+
+    /**
+     * @return what steps the store or the animation, not yet started
+     */
+    public ParticleSimulation getSimulation()
+    {
+        return this.mSimulation;
+    }
+
+    public StoreColorInitializer getStaticColorInitializer()
+    {
+        return this.mStaticColorInitializer;
+    }
+
+    public ColorTrajectoryUpdateHandler getColorTrajectoryHandler()
+    {
+        return this.mColorTrajectoryHandler;
+    }
+
+    public ReflectLightEngine getReflectLightEngine()
+    {
+        return this.mReflectLightEngine;
+    }
+
+    /**
+     * Lets go of shared resources. The simulation must already be stopped.
+     */
+    public void release()
+    {
+        if (this.mColorTrajectoryKey != null)
+        {
+            SharedResources.release(this.mColorTrajectoryKey);
+            this.mColorTrajectoryKey = null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.efung.glimmer;
+
+import android.opengl.GLES20;
+import org.andengine.opengl.shader.ShaderProgram;
+import org.andengine.opengl.shader.constants.ShaderProgramConstants;
+import org.andengine.opengl.shader.exception.ShaderProgramLinkException;
+import org.andengine.opengl.util.GLState;
+
+/**
+ * Same shading as AndEngine's PositionColorTextureCoordinatesShaderProgram, but the attributes are not read from
+ * a single interleaved buffer, so that {@link StaticGridRenderer} can keep positions and colours in separate buffers.
+ */
+public class GridShaderProgram extends ShaderProgram
+{
+    private static GridShaderProgram INSTANCE;
+
+    public static final String VERTEXSHADER =
+            "uniform mat4 " + ShaderProgramConstants.UNIFORM_MODELVIEWPROJECTIONMATRIX + ";\n" +
+            "attribute vec4 " + ShaderProgramConstants.ATTRIBUTE_POSITION + ";\n" +
+            "attribute vec4 " + ShaderProgramConstants.ATTRIBUTE_COLOR + ";\n" +
+            "attribute vec2 " + ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES + ";\n" +
+            "varying vec4 " + ShaderProgramConstants.VARYING_COLOR + ";\n" +
+            "varying vec2 " + ShaderProgramConstants.VARYING_TEXTURECOORDINATES + ";\n" +
+            "void main() {\n" +
+            "    " + ShaderProgramConstants.VARYING_COLOR + " = " + ShaderProgramConstants.ATTRIBUTE_COLOR + ";\n" +
+            "    " + ShaderProgramConstants.VARYING_TEXTURECOORDINATES + " = " + ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES + ";\n" +
+            "    gl_Position = " + ShaderProgramConstants.UNIFORM_MODELVIEWPROJECTIONMATRIX + " * " + ShaderProgramConstants.ATTRIBUTE_POSITION + ";\n" +
+            "}";
+
+    public static final String FRAGMENTSHADER =
+            "precision lowp float;\n" +
+            "uniform sampler2D " + ShaderProgramConstants.UNIFORM_TEXTURE_0 + ";\n" +
+            "varying lowp vec4 " + ShaderProgramConstants.VARYING_COLOR + ";\n" +
+            "varying mediump vec2 " + ShaderProgramConstants.VARYING_TEXTURECOORDINATES + ";\n" +
+            "void main() {\n" +
+            "    gl_FragColor = " + ShaderProgramConstants.VARYING_COLOR + " * texture2D(" + ShaderProgramConstants.UNIFORM_TEXTURE_0 + ", " + ShaderProgramConstants.VARYING_TEXTURECOORDINATES + ");\n" +
+            "}";
+
+    private int mUniformModelViewPositionMatrixLocation = -1;
+    private int mUniformTexture0Location = -1;
+
+    private GridShaderProgram()
+    {
+        super(VERTEXSHADER, FRAGMENTSHADER);
+    }
+
+    public static GridShaderProgram getInstance()
+    {
+        if (INSTANCE == null)
+        {
+            INSTANCE = new GridShaderProgram();
+        }
+        return INSTANCE;
+    }
+
+    @Override
+    protected void link(final GLState pGLState) throws ShaderProgramLinkException
+    {
+        GLES20.glBindAttribLocation(this.mProgramID, ShaderProgramConstants.ATTRIBUTE_POSITION_LOCATION, ShaderProgramConstants.ATTRIBUTE_POSITION);
+        GLES20.glBindAttribLocation(this.mProgramID, ShaderProgramConstants.ATTRIBUTE_COLOR_LOCATION, ShaderProgramConstants.ATTRIBUTE_COLOR);
+        GLES20.glBindAttribLocation(this.mProgramID, ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES_LOCATION, ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES);
+
+        super.link(pGLState);
+
+        this.mUniformModelViewPositionMatrixLocation = this.getUniformLocation(ShaderProgramConstants.UNIFORM_MODELVIEWPROJECTIONMATRIX);
+        this.mUniformTexture0Location = this.getUniformLocation(ShaderProgramConstants.UNIFORM_TEXTURE_0);
+    }
+
+    /**
+     * Makes this the current program and sets its uniforms. Attribute pointers are left to the caller.
+     */
+    public void bindProgram(final GLState pGLState)
+    {
+        if (!this.isCompiled())
+        {
+            this.compile(pGLState);
+        }
+        pGLState.useProgram(this.mProgramID);
+
+        GLES20.glEnableVertexAttribArray(ShaderProgramConstants.ATTRIBUTE_POSITION_LOCATION);
+        GLES20.glEnableVertexAttribArray(ShaderProgramConstants.ATTRIBUTE_COLOR_LOCATION);
+        GLES20.glEnableVertexAttribArray(ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES_LOCATION);
+
+        GLES20.glUniformMatrix4fv(this.mUniformModelViewPositionMatrixLocation, 1, false, pGLState.getModelViewProjectionGLMatrix(), 0);
+        GLES20.glUniform1i(this.mUniformTexture0Location, 0);
+    }
+
+    public void unbindProgram()
+    {
+        GLES20.glDisableVertexAttribArray(ShaderProgramConstants.ATTRIBUTE_COLOR_LOCATION);
+        GLES20.glDisableVertexAttribArray(ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES_LOCATION);
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.efung.glimmer;
+
+/**
+ * Counterpart of AndEngine's IParticleInitializer for particles held in a {@link ParticleStore}.
+ */
+public interface IStoreParticleInitializer
+{
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex);
+}
@@ -0,0 +1,10 @@
+package com.github.efung.glimmer;
+
+/**
+ * Counterpart of AndEngine's IParticleModifier for particles held in a {@link ParticleStore}. Rather than
+ * being called once per particle, a modifier is handed the whole store and walks its arrays itself.
+ */
+public interface IStoreParticleModifier extends IStoreParticleInitializer
+{
+    public void onUpdateParticles(final ParticleStore pParticleStore, final float pSecondsElapsed);
+}
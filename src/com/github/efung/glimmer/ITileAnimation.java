@@ -0,0 +1,36 @@
+package com.github.efung.glimmer;
+
+/**
+ * Whatever works out the colour of every tile of a grid over time, for a {@link ParticleSimulation} to step and
+ * publish: a {@link ParticleStore} that simulates particles, or a {@link ClosedFormAnimation} that computes each
+ * tile straight from the time.
+ */
+public interface ITileAnimation extends IVisualChangeSource
+{
+    public int getGridTiles();
+
+    /**
+     * @see ParticleStore#setVisibleTiles
+     */
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd);
+
+    public void update(final float pSecondsElapsed);
+
+    /**
+     * @return whether anything visible changed since {@link #clearModified()}
+     */
+    public boolean isModified();
+
+    public void clearModified();
+
+    /**
+     * Packs the colours of the visible tiles, and which tiles those are, into a render state.
+     */
+    public void pack(final RenderState pRenderState);
+
+    /**
+     * @param pOutsideFrames whether updates happen outside the engine's frames, e.g. on a thread of their own, in
+     *                       which case each one is recorded as a sample of its own
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler, final boolean pOutsideFrames);
+}
@@ -0,0 +1,41 @@
+package com.github.efung.glimmer;
+
+/**
+ * An emitter that places particles on the tiles of a fixed grid. Tiles are addressed by index so that
+ * callers can keep per-tile state in flat arrays instead of per-particle objects.
+ */
+public interface ITileEmitter
+{
+    public int getGridTiles();
+
+    /**
+     * @return index of the tile the next particle should be spawned on.
+     */
+    public int nextTile();
+
+    /**
+     * Called when the particle on the given tile has expired, so the tile can be handed out again.
+     */
+    public void releaseTile(final int pTile);
+
+    /**
+     * Called when particles have been put on the given tiles without {@link #nextTile()}, e.g. when they were
+     * restored from a snapshot, so the tiles aren't handed out again until released.
+     */
+    public void occupyTiles(final int[] pTiles, final int pCount);
+
+    public float getTileX(final int pTile);
+
+    public float getTileY(final int pTile);
+
+    /**
+     * @return rotation in degrees of the dot drawn on the given tile. This is fixed for the lifetime of the emitter.
+     */
+    public float getTileRotation(final int pTile);
+
+    /**
+     * @return a key naming where every tile is and how it is rotated, equal for emitters that lay tiles out alike, so
+     * that what is built from the layout can be shared (see {@link SharedResources})
+     */
+    public String getLayoutKey();
+}
@@ -0,0 +1,14 @@
+package com.github.efung.glimmer;
+
+/**
+ * Something drawn on screen that can say how quickly it is currently changing, so that the frame rate can be
+ * lowered while nothing visible happens.
+ */
+public interface IVisualChangeSource
+{
+    /**
+     * @return the fastest rate at which anything drawn by this source is changing, as a fraction of full brightness
+     * per second (e.g. an alpha ramp from 0.3 to 1 over 6 seconds is about 0.12). 0 if nothing is changing.
+     */
+    public float getVisualChangeRate();
+}
@@ -0,0 +1,99 @@
+package com.github.efung.glimmer;
+
+import org.andengine.input.sensor.SensorDelay;
+import org.andengine.input.sensor.orientation.IOrientationListener;
+import org.andengine.input.sensor.orientation.OrientationData;
+
+/**
+ * Passes orientation readings through an {@link OrientationFilter}, and asks for the sensor rate to be lowered while
+ * the device is still and raised again while it moves. GAME rate keeps Reflect Light smooth, but costs battery.
+ */
+public class MotionAdaptiveOrientationListener implements IOrientationListener
+{
+    public interface IFilteredOrientationListener
+    {
+        /**
+         * Called on the sensor thread with the latest filtered values.
+         */
+        public void onFilteredOrientationChanged(final float pPitch, final float pRoll);
+
+        /**
+         * Called on the sensor thread when the sensor should be registered again at a different rate.
+         */
+        public void onSensorDelayChanged(final SensorDelay pSensorDelay);
+    }
+
+    private final OrientationFilter mFilter = new OrientationFilter();
+    private final IFilteredOrientationListener mListener;
+    private final SensorDelay mStillSensorDelay;
+    private volatile SensorDelay mMovingSensorDelay;
+    private SensorDelay mCurrentSensorDelay;
+    private volatile FrameProfiler mFrameProfiler;
+
+    public MotionAdaptiveOrientationListener(final IFilteredOrientationListener pListener, final SensorDelay pStillSensorDelay, final SensorDelay pMovingSensorDelay)
+    {
+        this.mListener = pListener;
+        this.mStillSensorDelay = pStillSensorDelay;
+        this.mMovingSensorDelay = pMovingSensorDelay;
+        this.mCurrentSensorDelay = pMovingSensorDelay;
+    }
+
+    /**
+     * @return the rate the sensor should be registered at right now
+     */
+    public SensorDelay getSensorDelay()
+    {
+        return this.mCurrentSensorDelay;
+    }
+
+    public void setMovingSensorDelay(final SensorDelay pMovingSensorDelay)
+    {
+        this.mMovingSensorDelay = pMovingSensorDelay;
+    }
+
+    /**
+     * @param pFrameProfiler records how long each reading takes to handle, including the listener, or null
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+    }
+
+    /**
+     * Starts over as if the device were moving, e.g. after the sensor was disabled for a while.
+     */
+    public void reset()
+    {
+        this.mFilter.reset();
+        this.mCurrentSensorDelay = this.mMovingSensorDelay;
+    }
+
+    @Override
+    public void onOrientationChanged(final OrientationData pOrientationData)
+    {
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        final long start = frameProfiler != null ? System.nanoTime() : 0;
+
+        final OrientationFilter filter = this.mFilter;
+        filter.update(pOrientationData.getPitch(), pOrientationData.getRoll(), System.nanoTime());
+
+        this.mListener.onFilteredOrientationChanged(filter.getPitch(), filter.getRoll());
+
+        final SensorDelay sensorDelay = filter.isMoving() ? this.mMovingSensorDelay : this.mStillSensorDelay;
+        if (sensorDelay != this.mCurrentSensorDelay)
+        {
+            this.mCurrentSensorDelay = sensorDelay;
+            this.mListener.onSensorDelayChanged(sensorDelay);
+        }
+
+        if (frameProfiler != null)
+        {
+            frameProfiler.record(FrameProfiler.PHASE_SENSOR, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void onOrientationAccuracyChanged(final OrientationData pOrientationData)
+    {
+    }
+}
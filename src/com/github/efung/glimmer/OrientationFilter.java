@@ -0,0 +1,121 @@
+package com.github.efung.glimmer;
+
+/**
+ * Low-pass filter for pitch and roll readings that also tells whether the device is moving.
+ *
+ * Readings may arrive at any rate, so smoothing is based on elapsed time rather than sample count. Motion is
+ * detected from the angular speed of the raw readings: the device counts as moving as soon as the speed exceeds
+ * {@link #MOVING_DEGREES_PER_SECOND}, and as still only once it has stayed below {@link #STILL_DEGREES_PER_SECOND}
+ * for {@link #STILL_SECONDS}, so that short pauses don't toggle it.
+ */
+public class OrientationFilter
+{
+    public static final float MOVING_DEGREES_PER_SECOND = 10f;
+    public static final float STILL_DEGREES_PER_SECOND = 3f;
+    public static final float STILL_SECONDS = 2f;
+
+    private static final float SMOOTHING_SECONDS = 0.1f;
+    private static final float SPEED_SMOOTHING_SECONDS = 0.25f;
+
+    private float mPitch;
+    private float mRoll;
+    private float mRawPitch;
+    private float mRawRoll;
+    private float mSpeed; // degrees per second, smoothed
+    private float mStillSeconds;
+    private boolean mMoving = true;
+    private long mLastTimestamp = -1;
+
+    public float getPitch()
+    {
+        return this.mPitch;
+    }
+
+    public float getRoll()
+    {
+        return this.mRoll;
+    }
+
+    public boolean isMoving()
+    {
+        return this.mMoving;
+    }
+
+    public void reset()
+    {
+        this.mLastTimestamp = -1;
+        this.mSpeed = 0f;
+        this.mStillSeconds = 0f;
+        this.mMoving = true;
+    }
+
+    /**
+     * @param pTimestampNanoseconds time of the reading, from a monotonic clock such as System.nanoTime()
+     */
+    public void update(final float pPitch, final float pRoll, final long pTimestampNanoseconds)
+    {
+        if (this.mLastTimestamp < 0)
+        {
+            this.mPitch = this.mRawPitch = pPitch;
+            this.mRoll = this.mRawRoll = pRoll;
+            this.mLastTimestamp = pTimestampNanoseconds;
+            return;
+        }
+
+        final float secondsElapsed = (pTimestampNanoseconds - this.mLastTimestamp) / 1e9f;
+        this.mLastTimestamp = pTimestampNanoseconds;
+        if (secondsElapsed <= 0f)
+        {
+            this.mRawPitch = pPitch;
+            this.mRawRoll = pRoll;
+            return;
+        }
+
+        final float deltaPitch = angleDifference(pPitch, this.mRawPitch);
+        final float deltaRoll = angleDifference(pRoll, this.mRawRoll);
+        this.mRawPitch = pPitch;
+        this.mRawRoll = pRoll;
+
+        final float smoothing = secondsElapsed / (SMOOTHING_SECONDS + secondsElapsed);
+        this.mPitch += angleDifference(pPitch, this.mPitch) * smoothing;
+        this.mRoll += angleDifference(pRoll, this.mRoll) * smoothing;
+
+        final float speed = (Math.abs(deltaPitch) + Math.abs(deltaRoll)) / secondsElapsed;
+        this.mSpeed += (speed - this.mSpeed) * (secondsElapsed / (SPEED_SMOOTHING_SECONDS + secondsElapsed));
+
+        if (this.mSpeed > MOVING_DEGREES_PER_SECOND)
+        {
+            this.mMoving = true;
+            this.mStillSeconds = 0f;
+        }
+        else if (this.mSpeed < STILL_DEGREES_PER_SECOND)
+        {
+            this.mStillSeconds += secondsElapsed;
+            if (this.mStillSeconds >= STILL_SECONDS)
+            {
+                this.mMoving = false;
+            }
+        }
+        else
+        {
+            this.mStillSeconds = 0f;
+        }
+    }
+
+    /**
+     * @return pTo - pFrom in degrees, taking the short way around the circle
+     */
+    private static float angleDifference(final float pTo, final float pFrom)
+    {
+        float difference = pTo - pFrom;
+        if (difference > 180f)
+        {
+            difference -= 360f;
+        }
+        else if (difference < -180f)
+        {
+            difference += 360f;
+        }
+        return difference;
+    }
+}
@@ -0,0 +1,297 @@
+package com.github.efung.glimmer;
+
+import org.andengine.engine.handler.IUpdateHandler;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Steps an {@link ITileAnimation}, usually a {@link ParticleStore}, and the update handlers that drive it, and
+ * publishes the result as a {@link RenderState} for the GL thread to draw.
+ *
+ * Once {@link #start()}ed, steps run on a thread of their own. The engine's update thread only hands over the time
+ * that has passed with {@link #advance}, and never waits for a step, so a slow step delays the next new picture
+ * rather than the frames around it. Time that passes during a long step is caught up in one larger step. Before
+ * starting, and after {@link #stop()}, {@link #advance} steps on the calling thread instead.
+ *
+ * The simulation writes into one render state while the GL thread reads another. Finished states are handed over
+ * through a third, the latest, which is swapped with an atomic exchange, so neither side ever waits for the other
+ * and a state is never written while it is being drawn. A state only has to be packed when the animation changed.
+ *
+ * While running, the animation, its stages and the update handlers belong to the simulation thread. Anything else that
+ * changes them must do so through this class or while the simulation is stopped, apart from fields documented as
+ * safe to set from any thread.
+ */
+public class ParticleSimulation
+{
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // The latest state hasn't been taken by the GL thread yet
+
+    private final ITileAnimation mAnimation;
+    private final ArrayList<IUpdateHandler> mUpdateHandlers = new ArrayList<IUpdateHandler>();
+
+    private final RenderState[] mRenderStates = new RenderState[3];
+    // Index of the latest finished state, plus FRESH
+    private final AtomicInteger mLatest = new AtomicInteger(1);
+    private int mBackIndex = 0; // Simulation side
+    private int mFrontIndex = 2; // GL thread side
+
+    private volatile long mRequestedVisibleTiles = -1; // First tile in the high half, end in the low half, or -1
+    private FrameProfiler mFrameProfiler;
+
+    private final Object mLock = new Object();
+    // Guarded by mLock
+    private Thread mThread;
+    private float mSecondsDue;
+    private boolean mStopRequested;
+
+    public ParticleSimulation(final ITileAnimation pAnimation)
+    {
+        this.mAnimation = pAnimation;
+        final int gridTiles = pAnimation.getGridTiles();
+        for (int i = 0; i < this.mRenderStates.length; i++)
+        {
+            this.mRenderStates[i] = new RenderState(gridTiles);
+        }
+    }
+
+    public ITileAnimation getAnimation()
+    {
+        return this.mAnimation;
+    }
+
+    /**
+     * Runs the handler before the animation at every step. Only while stopped.
+     */
+    public void addUpdateHandler(final IUpdateHandler pUpdateHandler)
+    {
+        this.mUpdateHandlers.add(pUpdateHandler);
+    }
+
+    /**
+     * Only while stopped.
+     */
+    public void removeUpdateHandler(final IUpdateHandler pUpdateHandler)
+    {
+        this.mUpdateHandlers.remove(pUpdateHandler);
+    }
+
+    /**
+     * Limits which tiles are visible from the next step on. Can be called from any thread.
+     *
+     * @see ITileAnimation#setVisibleTiles
+     */
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd)
+    {
+        this.mRequestedVisibleTiles = ((long) pFirstTile << 32) | pTilesEnd;
+    }
+
+    /**
+     * @param pFrameProfiler receives the time spent in steps, each recorded as a sample of its own while running on
+     *                       the simulation thread, or null. Only while stopped.
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        synchronized (this.mLock)
+        {
+            this.mFrameProfiler = pFrameProfiler;
+            this.mAnimation.setFrameProfiler(pFrameProfiler, this.mThread != null);
+        }
+    }
+
+    public boolean isRunning()
+    {
+        synchronized (this.mLock)
+        {
+            return this.mThread != null;
+        }
+    }
+
+    /**
+     * Starts stepping on the simulation thread. The current state of the animation is published first, so there is
+     * something to draw straight away.
+     */
+    public void start()
+    {
+        synchronized (this.mLock)
+        {
+            if (this.mThread != null)
+            {
+                return;
+            }
+            publishIfModified();
+            this.mAnimation.setFrameProfiler(this.mFrameProfiler, true);
+            this.mSecondsDue = 0f;
+            this.mStopRequested = false;
+            this.mThread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runSimulation();
+                }
+            }, "ParticleSimulation");
+            this.mThread.start();
+        }
+    }
+
+    /**
+     * Stops the simulation thread, and returns once its last step is finished. Time handed over but not yet stepped
+     * is dropped.
+     */
+    public void stop()
+    {
+        final Thread thread;
+        synchronized (this.mLock)
+        {
+            thread = this.mThread;
+            if (thread == null)
+            {
+                return;
+            }
+            this.mStopRequested = true;
+            this.mLock.notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                thread.join();
+                break;
+            }
+            catch (final InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this.mLock)
+        {
+            this.mThread = null;
+            this.mAnimation.setFrameProfiler(this.mFrameProfiler, false);
+        }
+    }
+
+    /**
+     * Hands over time that has passed. Steps straight away on the calling thread if the simulation isn't running.
+     */
+    public void advance(final float pSecondsElapsed)
+    {
+        synchronized (this.mLock)
+        {
+            if (this.mThread != null)
+            {
+                this.mSecondsDue += pSecondsElapsed;
+                this.mLock.notifyAll();
+            }
+            else
+            {
+                // Holding the lock, so that the simulation can't be started halfway through
+                step(pSecondsElapsed, false);
+            }
+        }
+    }
+
+    /**
+     * For the GL thread: takes the latest finished state, if there is a newer one than last time.
+     *
+     * @return the new state, or null if nothing was published since the last call
+     */
+    public RenderState acquireNewRenderState()
+    {
+        if ((this.mLatest.get() & FRESH) == 0)
+        {
+            return null;
+        }
+        this.mFrontIndex = this.mLatest.getAndSet(this.mFrontIndex) & INDEX_MASK;
+        return this.mRenderStates[this.mFrontIndex];
+    }
+
+    /**
+     * For the GL thread: the state taken last, to draw again when there is no newer one.
+     */
+    public RenderState getRenderState()
+    {
+        return this.mRenderStates[this.mFrontIndex];
+    }
+
+    private void runSimulation()
+    {
+        while (true)
+        {
+            final float secondsDue;
+            synchronized (this.mLock)
+            {
+                while (this.mSecondsDue == 0f && !this.mStopRequested)
+                {
+                    try
+                    {
+                        this.mLock.wait();
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        // Only stop() ends the simulation
+                    }
+                }
+                if (this.mStopRequested)
+                {
+                    return;
+                }
+                secondsDue = this.mSecondsDue;
+                this.mSecondsDue = 0f;
+            }
+            step(secondsDue, true);
+        }
+    }
+
+    private void step(final float pSecondsElapsed, final boolean pOwnThread)
+    {
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        final long start = frameProfiler != null ? System.nanoTime() : 0;
+
+        final long requestedVisibleTiles = this.mRequestedVisibleTiles;
+        if (requestedVisibleTiles != -1)
+        {
+            this.mAnimation.setVisibleTiles((int) (requestedVisibleTiles >>> 32), (int) requestedVisibleTiles);
+        }
+
+        final ArrayList<IUpdateHandler> updateHandlers = this.mUpdateHandlers;
+        for (int i = 0; i < updateHandlers.size(); i++)
+        {
+            updateHandlers.get(i).onUpdate(pSecondsElapsed);
+        }
+        this.mAnimation.update(pSecondsElapsed);
+        publishIfModified();
+
+        if (frameProfiler != null)
+        {
+            final long nanos = System.nanoTime() - start;
+            if (pOwnThread)
+            {
+                frameProfiler.record(FrameProfiler.PHASE_SIMULATION, nanos);
+            }
+            else
+            {
+                frameProfiler.add(FrameProfiler.PHASE_SIMULATION, nanos);
+            }
+        }
+    }
+
+    private void publishIfModified()
+    {
+        if (!this.mAnimation.isModified())
+        {
+            return;
+        }
+
+        this.mAnimation.pack(this.mRenderStates[this.mBackIndex]);
+        this.mAnimation.clearModified();
+        this.mBackIndex = this.mLatest.getAndSet(this.mBackIndex | FRESH) & INDEX_MASK;
+    }
+}
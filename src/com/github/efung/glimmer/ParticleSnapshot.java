@@ -0,0 +1,199 @@
+package com.github.efung.glimmer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The live particles of a {@link ParticleStore}, saved to a file so that a scene can come back exactly as it was
+ * instead of filling up again from empty.
+ *
+ * The file is a header followed by the tiles, ages, lifetimes, colours and alphas of the live slots, each as one
+ * contiguous array in native byte order. It is memory-mapped both ways, so each array is copied straight between
+ * the file and the store's own array. Positions and rotations aren't saved, as they follow from the tile and the
+ * emitter's seed, which the snapshot carries along with the rest of the scene's state.
+ */
+public class ParticleSnapshot
+{
+    private static final int MAGIC = 0x47534e50; // "GSNP"
+    // Change whenever the layout changes, so that old files aren't used
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 9 * 4;
+    private static final int BYTES_PER_PARTICLE = 5 * 4;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mGridTiles;
+    private final long mSeed;
+    private final int mFillState;
+    private final float mClockSeconds;
+    private final int mParticleCount;
+
+    private ParticleSnapshot(final MappedByteBuffer pBuffer)
+    {
+        this.mBuffer = pBuffer;
+        pBuffer.position(3 * 4);
+        this.mGridTiles = pBuffer.getInt();
+        this.mSeed = pBuffer.getLong();
+        this.mFillState = pBuffer.getInt();
+        this.mClockSeconds = pBuffer.getFloat();
+        this.mParticleCount = pBuffer.getInt();
+    }
+
+    /**
+     * @param pKey identifies the configuration the particles were made for, e.g. mode and screen size
+     * @param pSeed the seed the scene, including the store's emitter, was built from
+     * @param pFillState where the emitter's fill order had got to
+     * @param pClockSeconds how long the scene had been running, e.g. to carry on colour changes from the same point
+     */
+    public static void write(final File pFile, final int pKey, final long pSeed, final int pFillState, final float pClockSeconds, final ParticleStore pParticleStore) throws IOException
+    {
+        final int count = pParticleStore.getParticlesAlive();
+        final int size = HEADER_BYTES + count * BYTES_PER_PARTICLE;
+
+        // Written next to the old one and then renamed over it, so that a half-written snapshot is never read
+        final File tempFile = new File(pFile.getPath() + ".tmp");
+        final RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+        try
+        {
+            file.setLength(size);
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(pKey).putInt(pParticleStore.getEmitter().getGridTiles());
+            buffer.putLong(pSeed).putInt(pFillState).putFloat(pClockSeconds).putInt(count);
+
+            getSection(buffer, count, 0).asIntBuffer().put(pParticleStore.getTiles(), 0, count);
+            getSection(buffer, count, 1).asFloatBuffer().put(pParticleStore.getAges(), 0, count);
+            getSection(buffer, count, 2).asFloatBuffer().put(pParticleStore.getLifetimes(), 0, count);
+            getSection(buffer, count, 3).asIntBuffer().put(pParticleStore.getColors(), 0, count);
+            getSection(buffer, count, 4).asFloatBuffer().put(pParticleStore.getAlphas(), 0, count);
+            // Not forced to storage, as this runs on every pause: the system writes the pages back in its own time,
+            // and a snapshot lost in a crash only costs a scene that fills up from empty
+        }
+        finally
+        {
+            file.close();
+        }
+
+        if (!tempFile.renameTo(pFile))
+        {
+            tempFile.delete();
+            throw new IOException("Couldn't replace " + pFile);
+        }
+    }
+
+    /**
+     * @return the snapshot in the given file, or null if there isn't one or it was made for a different key.
+     */
+    public static ParticleSnapshot read(final File pFile, final int pKey) throws IOException
+    {
+        if (!pFile.exists())
+        {
+            return null;
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(pFile, "r");
+        try
+        {
+            final long size = file.length();
+            if (size < HEADER_BYTES)
+            {
+                return null;
+            }
+
+            // The mapping stays valid after the file is closed
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != pKey)
+            {
+                return null;
+            }
+
+            final ParticleSnapshot snapshot = new ParticleSnapshot(buffer);
+            if (snapshot.mParticleCount < 0 || size != HEADER_BYTES + (long) snapshot.mParticleCount * BYTES_PER_PARTICLE)
+            {
+                return null;
+            }
+            return snapshot;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    public long getSeed()
+    {
+        return this.mSeed;
+    }
+
+    public int getFillState()
+    {
+        return this.mFillState;
+    }
+
+    public float getClockSeconds()
+    {
+        return this.mClockSeconds;
+    }
+
+    public int getParticleCount()
+    {
+        return this.mParticleCount;
+    }
+
+    /**
+     * Makes the saved particles the live particles of an empty store, whose emitter must have been built from
+     * {@link #getSeed()}.
+     *
+     * @return false, leaving the store empty, if the snapshot doesn't fit the store
+     */
+    public boolean restore(final ParticleStore pParticleStore)
+    {
+        if (pParticleStore.getParticlesAlive() != 0)
+        {
+            throw new IllegalStateException("Particles can only be restored into an empty store");
+        }
+
+        final int count = this.mParticleCount;
+        final int gridTiles = pParticleStore.getEmitter().getGridTiles();
+        if (gridTiles != this.mGridTiles || count > pParticleStore.getParticlesMaximum())
+        {
+            return false;
+        }
+
+        final IntBuffer tiles = getSection(this.mBuffer, count, 0).asIntBuffer();
+        for (int i = 0; i < count; i++)
+        {
+            final int tile = tiles.get(i);
+            if (tile < 0 || tile >= gridTiles)
+            {
+                return false;
+            }
+        }
+
+        tiles.get(pParticleStore.getTiles(), 0, count);
+        getSection(this.mBuffer, count, 1).asFloatBuffer().get(pParticleStore.getAges(), 0, count);
+        getSection(this.mBuffer, count, 2).asFloatBuffer().get(pParticleStore.getLifetimes(), 0, count);
+        getSection(this.mBuffer, count, 3).asIntBuffer().get(pParticleStore.getColors(), 0, count);
+        getSection(this.mBuffer, count, 4).asFloatBuffer().get(pParticleStore.getAlphas(), 0, count);
+        pParticleStore.onParticlesRestored(count);
+        return true;
+    }
+
+    /**
+     * @return the pSection'th per-particle array, in the same byte order as pBuffer
+     */
+    private static ByteBuffer getSection(final ByteBuffer pBuffer, final int pCount, final int pSection)
+    {
+        final ByteBuffer section = pBuffer.duplicate();
+        section.position(HEADER_BYTES + pSection * pCount * 4);
+        section.limit(section.position() + pCount * 4);
+        return section.slice().order(pBuffer.order());
+    }
+}
@@ -0,0 +1,653 @@
+package com.github.efung.glimmer;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Structure-of-arrays particle storage. Instead of one Particle object (and its entity) per dot, all live
+ * particles are kept in parallel primitive arrays indexed by slot, where slots [0, getParticlesAlive()) are live.
+ * Expired particles are swap-removed so the live range stays contiguous.
+ *
+ * The store tracks whether anything visible changed since {@link #clearModified()}, so that drawing can be skipped
+ * when nothing did, and a generation count that changes whenever particles are spawned or expired (i.e. slots move)
+ * or the range of visible tiles changes.
+ *
+ * Only particles on visible tiles need their looks kept up to date. Stages may skip the rest, apart from ageing and
+ * expiring them, and must bring them up to date once they become visible again.
+ *
+ * Spawning follows the same rules as AndEngine's ParticleSystem, including the cap applied by
+ * {@link GlimmerParticleSystem#determineCurrentRate()}.
+ *
+ * Where possible, the initializers and modifiers are compiled into a {@link FusedParticlePipeline} the next time
+ * the store is updated after they change.
+ *
+ * Given {@link ParticleUpdateWorkers}, large stores have their per-particle work split across several threads.
+ * Modifiers that aren't compiled still run on the updating thread, and particles are expired there afterwards in the
+ * same order as they would be otherwise, so the result is the same either way.
+ */
+public class ParticleStore implements ITileAnimation
+{
+    public static final float LIFETIME_INFINITE = Float.POSITIVE_INFINITY;
+
+    // How long particles over the limit that would never expire take to fade out
+    private static final float TRIM_FADE_SECONDS = 3f;
+
+    private final ITileEmitter mEmitter;
+    private final float mRateMinimum;
+    private final float mRateMaximum;
+    private final int mParticlesMaximum;
+    private volatile int mParticleLimit; // May be set from any thread
+    private final Random mRandom = new Random();
+
+    private final int[] mTiles;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mRotations;
+    private final float[] mAlphas;
+    private final int[] mColors; // ARGB packed
+    private final float[] mAges;
+    private final float[] mLifetimes;
+
+    private final ArrayList<IStoreParticleInitializer> mParticleInitializers = new ArrayList<IStoreParticleInitializer>();
+    private final ArrayList<IStoreParticleModifier> mParticleModifiers = new ArrayList<IStoreParticleModifier>();
+    private FusedParticlePipeline mPipeline;
+    private boolean mPipelineCompiled;
+    private boolean mPipelineEnabled = true;
+
+    private boolean mParticlesSpawnEnabled = true;
+    private int mParticlesAlive;
+    private float mTrimFadeRemaining = TRIM_FADE_SECONDS;
+    private int mTrimStart = Integer.MAX_VALUE; // First slot being faded out, if any
+    private float mTrimFade = 1f;
+    private float mParticlesDueToSpawn;
+    private int mGeneration;
+    private int mFirstVisibleTile;
+    private int mVisibleTilesEnd;
+    private boolean mModified = true;
+    private FrameProfiler mFrameProfiler;
+    private boolean mProfiledOutsideFrames;
+    private ParticleUpdateWorkers mUpdateWorkers;
+
+    public ParticleStore(final ITileEmitter pEmitter, final float pRateMinimum, final float pRateMaximum, final int pParticlesMaximum)
+    {
+        this.mEmitter = pEmitter;
+        this.mRateMinimum = pRateMinimum;
+        this.mRateMaximum = pRateMaximum;
+        this.mParticlesMaximum = pParticlesMaximum;
+        this.mParticleLimit = pParticlesMaximum;
+        this.mVisibleTilesEnd = pEmitter.getGridTiles();
+
+        this.mTiles = new int[pParticlesMaximum];
+        this.mX = new float[pParticlesMaximum];
+        this.mY = new float[pParticlesMaximum];
+        this.mRotations = new float[pParticlesMaximum];
+        this.mAlphas = new float[pParticlesMaximum];
+        this.mColors = new int[pParticlesMaximum];
+        this.mAges = new float[pParticlesMaximum];
+        this.mLifetimes = new float[pParticlesMaximum];
+    }
+
+    /**
+     * @return the fraction of the maximum alive once a store spawning at a random rate between the two, of particles
+     * that live for pLifetime, has settled: the mean rate times the lifetime (Little's law), as far as it fits
+     */
+    public static float getSteadyStateOccupancy(final float pRateMinimum, final float pRateMaximum, final float pLifetime,
+                                                final int pParticlesMaximum)
+    {
+        return pParticlesMaximum > 0 ? Math.min(1f, (pRateMinimum + pRateMaximum) * 0.5f * pLifetime / pParticlesMaximum) : 0f;
+    }
+
+    public void addParticleInitializer(final IStoreParticleInitializer pParticleInitializer)
+    {
+        this.mParticleInitializers.add(pParticleInitializer);
+        this.mPipelineCompiled = false;
+    }
+
+    public void addParticleModifier(final IStoreParticleModifier pParticleModifier)
+    {
+        this.mParticleModifiers.add(pParticleModifier);
+        this.mPipelineCompiled = false;
+    }
+
+    public void setSeed(final long pSeed)
+    {
+        this.mRandom.setSeed(pSeed);
+    }
+
+    public Random getRandom()
+    {
+        return this.mRandom;
+    }
+
+    public ITileEmitter getEmitter()
+    {
+        return this.mEmitter;
+    }
+
+    @Override
+    public int getGridTiles()
+    {
+        return this.mEmitter.getGridTiles();
+    }
+
+    public boolean isParticlesSpawnEnabled()
+    {
+        return this.mParticlesSpawnEnabled;
+    }
+
+    public void setParticlesSpawnEnabled(final boolean pParticlesSpawnEnabled)
+    {
+        this.mParticlesSpawnEnabled = pParticlesSpawnEnabled;
+    }
+
+    public int getParticlesAlive()
+    {
+        return this.mParticlesAlive;
+    }
+
+    public int getParticlesMaximum()
+    {
+        return this.mParticlesMaximum;
+    }
+
+    public int getParticleLimit()
+    {
+        return this.mParticleLimit;
+    }
+
+    /**
+     * Caps how many particles may be alive, up to the maximum the store was made for. If more are alive, none are
+     * spawned until enough have expired on their own. Those over the limit that never would are faded out and then
+     * expired, so that lowering the limit never makes dots vanish at once. Spawning slows down as it does near the
+     * maximum. Can be called from any thread.
+     */
+    public void setParticleLimit(final int pParticleLimit)
+    {
+        this.mParticleLimit = Math.max(0, Math.min(this.mParticlesMaximum, pParticleLimit));
+    }
+
+    /**
+     * @return the first slot whose particle, if it never expires, is being faded out, or {@link Integer#MAX_VALUE}
+     */
+    public int getTrimStart()
+    {
+        return this.mTrimStart;
+    }
+
+    /**
+     * @return how much to scale the alphas of particles being faded out by, from 1 down to 0
+     */
+    public float getTrimFade()
+    {
+        return this.mTrimFade;
+    }
+
+    public int getGeneration()
+    {
+        return this.mGeneration;
+    }
+
+    /**
+     * Limits which tiles are visible, e.g. when only part of a grid wider than the screen is in view.
+     *
+     * @param pFirstTile first visible tile
+     * @param pTilesEnd one past the last visible tile
+     */
+    @Override
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd)
+    {
+        if (pFirstTile != this.mFirstVisibleTile || pTilesEnd != this.mVisibleTilesEnd)
+        {
+            this.mFirstVisibleTile = pFirstTile;
+            this.mVisibleTilesEnd = pTilesEnd;
+            this.mGeneration++;
+            this.mModified = true;
+        }
+    }
+
+    public int getFirstVisibleTile()
+    {
+        return this.mFirstVisibleTile;
+    }
+
+    public int getVisibleTilesEnd()
+    {
+        return this.mVisibleTilesEnd;
+    }
+
+    @Override
+    public boolean isModified()
+    {
+        return this.mModified;
+    }
+
+    /**
+     * Must be called by modifiers that change anything visible about a particle.
+     */
+    public void markModified()
+    {
+        this.mModified = true;
+    }
+
+    @Override
+    public void clearModified()
+    {
+        this.mModified = false;
+    }
+
+    /**
+     * @return the fastest change reported by any modifier that is an {@link IVisualChangeSource}, or 0 if no
+     * particles are alive.
+     */
+    @Override
+    public float getVisualChangeRate()
+    {
+        if (this.mParticlesAlive == 0)
+        {
+            return 0f;
+        }
+
+        float visualChangeRate = 0f;
+        final ArrayList<IStoreParticleModifier> modifiers = this.mParticleModifiers;
+        for (int j = modifiers.size() - 1; j >= 0; j--)
+        {
+            final IStoreParticleModifier modifier = modifiers.get(j);
+            if (modifier instanceof IVisualChangeSource)
+            {
+                visualChangeRate = Math.max(visualChangeRate, ((IVisualChangeSource) modifier).getVisualChangeRate());
+            }
+        }
+        return visualChangeRate;
+    }
+
+    public int[] getTiles()
+    {
+        return this.mTiles;
+    }
+
+    public float[] getX()
+    {
+        return this.mX;
+    }
+
+    public float[] getY()
+    {
+        return this.mY;
+    }
+
+    public float[] getRotations()
+    {
+        return this.mRotations;
+    }
+
+    public float[] getAlphas()
+    {
+        return this.mAlphas;
+    }
+
+    public int[] getColors()
+    {
+        return this.mColors;
+    }
+
+    public float[] getAges()
+    {
+        return this.mAges;
+    }
+
+    public float[] getLifetimes()
+    {
+        return this.mLifetimes;
+    }
+
+    /**
+     * @param pFrameProfiler receives the time spent spawning and updating particles, or null
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        setFrameProfiler(pFrameProfiler, false);
+    }
+
+    /**
+     * @param pOutsideFrames whether updates happen outside the engine's frames, e.g. on a thread of their own, in
+     *                       which case each one is recorded as a sample of its own
+     */
+    @Override
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler, final boolean pOutsideFrames)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+        this.mProfiledOutsideFrames = pOutsideFrames;
+    }
+
+    /**
+     * @param pUpdateWorkers shares updates of stores large enough to be worth it, or null to always update on the
+     *                       calling thread alone
+     */
+    public void setUpdateWorkers(final ParticleUpdateWorkers pUpdateWorkers)
+    {
+        this.mUpdateWorkers = pUpdateWorkers;
+    }
+
+    /**
+     * Running each stage on its own gives the same result, only slower. Mostly useful for comparing the two.
+     */
+    public void setPipelineEnabled(final boolean pPipelineEnabled)
+    {
+        this.mPipelineEnabled = pPipelineEnabled;
+        this.mPipelineCompiled = false;
+    }
+
+    /**
+     * @return the compiled pipeline in use, or null if the stages couldn't be compiled or the store hasn't been
+     * updated since they changed.
+     */
+    public FusedParticlePipeline getPipeline()
+    {
+        return this.mPipelineCompiled ? this.mPipeline : null;
+    }
+
+    /**
+     * Gives every live particle the same colour, e.g. when the configured colour has changed.
+     */
+    public void setColors(final int pColorARGB)
+    {
+        final int[] colors = this.mColors;
+        for (int i = this.mParticlesAlive - 1; i >= 0; i--)
+        {
+            colors[i] = pColorARGB;
+        }
+        this.mModified = true;
+    }
+
+    @Override
+    public void pack(final RenderState pRenderState)
+    {
+        pRenderState.pack(this);
+    }
+
+    @Override
+    public void update(final float pSecondsElapsed)
+    {
+        if (!this.mPipelineCompiled)
+        {
+            this.mPipeline = this.mPipelineEnabled ? FusedParticlePipeline.compile(this.mParticleInitializers, this.mParticleModifiers) : null;
+            this.mPipelineCompiled = true;
+        }
+
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        final long spawnStart = frameProfiler != null ? System.nanoTime() : 0;
+        if (this.mParticlesSpawnEnabled)
+        {
+            spawnParticles(pSecondsElapsed);
+        }
+
+        if (frameProfiler == null)
+        {
+            updateParticles(pSecondsElapsed);
+            trimParticles(pSecondsElapsed);
+            return;
+        }
+        final long updateStart = System.nanoTime();
+        updateParticles(pSecondsElapsed);
+        trimParticles(pSecondsElapsed);
+        final long updateEnd = System.nanoTime();
+        if (this.mProfiledOutsideFrames)
+        {
+            frameProfiler.record(FrameProfiler.PHASE_SPAWN, updateStart - spawnStart);
+            frameProfiler.record(FrameProfiler.PHASE_UPDATE, updateEnd - updateStart);
+        }
+        else
+        {
+            frameProfiler.add(FrameProfiler.PHASE_SPAWN, updateStart - spawnStart);
+            frameProfiler.add(FrameProfiler.PHASE_UPDATE, updateEnd - updateStart);
+        }
+    }
+
+    private void updateParticles(final float pSecondsElapsed)
+    {
+        final ParticleUpdateWorkers updateWorkers = this.mUpdateWorkers;
+        if (updateWorkers != null && ParticleUpdateWorkers.isWorthwhile(this.mParticlesAlive))
+        {
+            updateParticlesInParallel(updateWorkers, pSecondsElapsed);
+            return;
+        }
+
+        if (this.mPipeline != null)
+        {
+            this.mPipeline.onUpdateParticles(this, pSecondsElapsed);
+            return;
+        }
+
+        final ArrayList<IStoreParticleModifier> modifiers = this.mParticleModifiers;
+        for (int j = modifiers.size() - 1; j >= 0; j--)
+        {
+            modifiers.get(j).onUpdateParticles(this, pSecondsElapsed);
+        }
+
+        final float[] ages = this.mAges;
+        final float[] lifetimes = this.mLifetimes;
+        for (int i = this.mParticlesAlive - 1; i >= 0; i--)
+        {
+            ages[i] += pSecondsElapsed;
+            if (ages[i] > lifetimes[i])
+            {
+                expireParticle(i);
+            }
+        }
+    }
+
+    /**
+     * Fades out particles in slots over the limit that would never expire on their own, and expires them once they
+     * are invisible. Those that will expire are left to. The fade is applied when packing (see {@link #getTrimFade}),
+     * as modifiers don't necessarily set every alpha on every update.
+     */
+    private void trimParticles(final float pSecondsElapsed)
+    {
+        final int limit = this.mParticleLimit;
+        if (this.mParticlesAlive <= limit)
+        {
+            this.mTrimFadeRemaining = TRIM_FADE_SECONDS;
+            this.mTrimStart = Integer.MAX_VALUE;
+            this.mTrimFade = 1f;
+            return;
+        }
+
+        this.mTrimFadeRemaining -= pSecondsElapsed;
+        this.mTrimStart = limit;
+        this.mTrimFade = Math.max(0f, this.mTrimFadeRemaining / TRIM_FADE_SECONDS);
+        this.mModified = true;
+        if (this.mTrimFade > 0f)
+        {
+            return;
+        }
+        final float[] lifetimes = this.mLifetimes;
+        for (int i = this.mParticlesAlive - 1; i >= limit; i--)
+        {
+            if (lifetimes[i] == LIFETIME_INFINITE)
+            {
+                expireParticle(i);
+            }
+        }
+    }
+
+    private void updateParticlesInParallel(final ParticleUpdateWorkers pUpdateWorkers, final float pSecondsElapsed)
+    {
+        final FusedParticlePipeline pipeline = this.mPipeline;
+        if (pipeline == null)
+        {
+            final ArrayList<IStoreParticleModifier> modifiers = this.mParticleModifiers;
+            for (int j = modifiers.size() - 1; j >= 0; j--)
+            {
+                modifiers.get(j).onUpdateParticles(this, pSecondsElapsed);
+            }
+        }
+
+        if (pUpdateWorkers.updateSlots(this, pSecondsElapsed))
+        {
+            this.mModified = true;
+        }
+
+        if (pipeline != null)
+        {
+            pipeline.expireParticles(this);
+            return;
+        }
+        final float[] ages = this.mAges;
+        final float[] lifetimes = this.mLifetimes;
+        for (int i = this.mParticlesAlive - 1; i >= 0; i--)
+        {
+            if (ages[i] > lifetimes[i])
+            {
+                expireParticle(i);
+            }
+        }
+    }
+
+    /**
+     * Does the part of an update that only touches slots [pStart, pEnd), and so may run for several ranges at once:
+     * the compiled pipeline's, or else ageing. Called by {@link ParticleUpdateWorkers}.
+     *
+     * @return whether anything visible changed
+     */
+    boolean updateSlots(final int pStart, final int pEnd, final float pSecondsElapsed)
+    {
+        if (this.mPipeline != null)
+        {
+            return this.mPipeline.updateSlots(this, pStart, pEnd, pSecondsElapsed);
+        }
+
+        final float[] ages = this.mAges;
+        for (int i = pStart; i < pEnd; i++)
+        {
+            ages[i] += pSecondsElapsed;
+        }
+        return false;
+    }
+
+    public void reset()
+    {
+        for (int i = this.mParticlesAlive - 1; i >= 0; i--)
+        {
+            this.mEmitter.releaseTile(this.mTiles[i]);
+        }
+        this.mParticlesAlive = 0;
+        this.mParticlesDueToSpawn = 0;
+        this.mGeneration++;
+        this.mModified = true;
+    }
+
+    /**
+     * Makes slots [0, pCount) of an empty store live, after their tiles, ages, lifetimes, colours and alphas have been
+     * written straight into its arrays, e.g. by {@link ParticleSnapshot#restore}. Positions and rotations are looked
+     * up from the emitter, and the emitter is told which tiles are now taken. Initializers aren't run.
+     */
+    void onParticlesRestored(final int pCount)
+    {
+        if (this.mParticlesAlive != 0)
+        {
+            throw new IllegalStateException("Particles can only be restored into an empty store");
+        }
+
+        final ITileEmitter emitter = this.mEmitter;
+        final int[] tiles = this.mTiles;
+        for (int i = 0; i < pCount; i++)
+        {
+            final int tile = tiles[i];
+            this.mX[i] = emitter.getTileX(tile);
+            this.mY[i] = emitter.getTileY(tile);
+            this.mRotations[i] = emitter.getTileRotation(tile);
+        }
+        emitter.occupyTiles(tiles, pCount);
+
+        this.mParticlesAlive = pCount;
+        this.mParticlesDueToSpawn = 0;
+        this.mGeneration++;
+        this.mModified = true;
+    }
+
+    protected float determineCurrentRate()
+    {
+        // See GlimmerParticleSystem.determineCurrentRate() for why spawning stops at the maximum.
+        if (this.mParticlesAlive >= this.mParticleLimit)
+        {
+            return 0f;
+        }
+        if (this.mRateMinimum == this.mRateMaximum)
+        {
+            return this.mRateMinimum;
+        }
+        return this.mRateMinimum + this.mRandom.nextFloat() * (this.mRateMaximum - this.mRateMinimum);
+    }
+
+    private void spawnParticles(final float pSecondsElapsed)
+    {
+        this.mParticlesDueToSpawn += determineCurrentRate() * pSecondsElapsed;
+
+        final int particlesToSpawn = Math.max(0, Math.min(this.mParticleLimit - this.mParticlesAlive, (int) this.mParticlesDueToSpawn));
+        this.mParticlesDueToSpawn -= particlesToSpawn;
+
+        for (int i = 0; i < particlesToSpawn; i++)
+        {
+            spawnParticle();
+        }
+    }
+
+    private void spawnParticle()
+    {
+        final int index = this.mParticlesAlive;
+        final int tile = this.mEmitter.nextTile();
+
+        this.mTiles[index] = tile;
+        this.mX[index] = this.mEmitter.getTileX(tile);
+        this.mY[index] = this.mEmitter.getTileY(tile);
+        this.mRotations[index] = this.mEmitter.getTileRotation(tile);
+        this.mAlphas[index] = 1f;
+        this.mColors[index] = 0xFFFFFFFF;
+        this.mAges[index] = 0f;
+        this.mLifetimes[index] = LIFETIME_INFINITE;
+
+        this.mParticlesAlive++;
+        this.mGeneration++;
+        this.mModified = true;
+
+        if (this.mPipeline != null)
+        {
+            this.mPipeline.onInitializeParticle(this, index);
+            return;
+        }
+
+        final ArrayList<IStoreParticleInitializer> initializers = this.mParticleInitializers;
+        for (int j = 0; j < initializers.size(); j++)
+        {
+            initializers.get(j).onInitializeParticle(this, index);
+        }
+        final ArrayList<IStoreParticleModifier> modifiers = this.mParticleModifiers;
+        for (int j = 0; j < modifiers.size(); j++)
+        {
+            modifiers.get(j).onInitializeParticle(this, index);
+        }
+    }
+
+    /**
+     * Swap-removes the particle in the given slot. Only to be called while iterating slots downwards.
+     */
+    void expireParticle(final int pIndex)
+    {
+        this.mEmitter.releaseTile(this.mTiles[pIndex]);
+
+        final int last = --this.mParticlesAlive;
+        this.mGeneration++;
+        this.mModified = true;
+        if (pIndex != last)
+        {
+            this.mTiles[pIndex] = this.mTiles[last];
+            this.mX[pIndex] = this.mX[last];
+            this.mY[pIndex] = this.mY[last];
+            this.mRotations[pIndex] = this.mRotations[last];
+            this.mAlphas[pIndex] = this.mAlphas[last];
+            this.mColors[pIndex] = this.mColors[last];
+            this.mAges[pIndex] = this.mAges[last];
+            this.mLifetimes[pIndex] = this.mLifetimes[last];
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.efung.glimmer;
+
+/**
+ * A small fixed pool of threads that share the per-particle work of a {@link ParticleStore}'s update with the
+ * thread calling it, on devices with cores to spare.
+ *
+ * The live slots are split into one contiguous range per thread, the caller's included. Each range only touches its
+ * own slots, and the caller waits until every range is done before anything else reads them, so no slot is ever
+ * seen half-updated. Handing out and collecting the ranges takes a lock and a wake-up per worker, which is only worth
+ * it for large stores; smaller ones should stay on the calling thread (see {@link #isWorthwhile}).
+ *
+ * Nothing is allocated per update. Only one update may run at a time.
+ */
+public class ParticleUpdateWorkers
+{
+    // Below this many live particles, waking the workers costs more than it saves
+    public static final int PARALLEL_THRESHOLD = 16384;
+    private static final int MAX_WORKERS = 3;
+
+    private final Thread[] mThreads;
+    private final boolean[] mRangeModified;
+    private final Object mLock = new Object();
+
+    // Guarded by mLock
+    private int mRound;
+    private int mRangesPending;
+    private boolean mShutdown;
+    private ParticleStore mStore;
+    private float mSecondsElapsed;
+    private int mParticleCount;
+
+    /**
+     * @return workers for the cores this device has besides the calling thread's, or null if it has only one
+     */
+    public static ParticleUpdateWorkers createForDevice()
+    {
+        final int workers = Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1);
+        return workers > 0 ? new ParticleUpdateWorkers(workers) : null;
+    }
+
+    public ParticleUpdateWorkers(final int pWorkers)
+    {
+        this.mThreads = new Thread[pWorkers];
+        this.mRangeModified = new boolean[pWorkers + 1];
+        for (int i = 0; i < pWorkers; i++)
+        {
+            final int range = i + 1; // The caller takes range 0
+            this.mThreads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runWorker(range);
+                }
+            }, "ParticleUpdateWorker-" + range);
+            this.mThreads[i].setDaemon(true);
+            this.mThreads[i].start();
+        }
+    }
+
+    public int getWorkerCount()
+    {
+        return this.mThreads.length;
+    }
+
+    /**
+     * @return whether a store with this many live particles is large enough to split
+     */
+    public static boolean isWorthwhile(final int pParticlesAlive)
+    {
+        return pParticlesAlive >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Runs {@link ParticleStore#updateSlots} over every live slot, split across the workers and the calling thread,
+     * and returns once all of it is done.
+     *
+     * @return whether any range changed anything visible
+     */
+    public boolean updateSlots(final ParticleStore pParticleStore, final float pSecondsElapsed)
+    {
+        final int ranges = this.mRangeModified.length;
+        synchronized (this.mLock)
+        {
+            if (this.mShutdown)
+            {
+                // E.g. an update that was already under way when the wallpaper was destroyed
+                return pParticleStore.updateSlots(0, pParticleStore.getParticlesAlive(), pSecondsElapsed);
+            }
+            this.mStore = pParticleStore;
+            this.mSecondsElapsed = pSecondsElapsed;
+            this.mParticleCount = pParticleStore.getParticlesAlive();
+            this.mRangesPending = ranges - 1;
+            this.mRound++;
+            this.mLock.notifyAll();
+        }
+
+        this.mRangeModified[0] = updateRange(pParticleStore, pSecondsElapsed, this.mParticleCount, 0);
+
+        boolean interrupted = false;
+        synchronized (this.mLock)
+        {
+            // The other ranges must be finished before anyone reads the store again, so an interrupt only waits on
+            while (this.mRangesPending > 0)
+            {
+                try
+                {
+                    this.mLock.wait();
+                }
+                catch (final InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            this.mStore = null;
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean modified = false;
+        for (int range = 0; range < ranges; range++)
+        {
+            modified |= this.mRangeModified[range];
+        }
+        return modified;
+    }
+
+    /**
+     * Stops the worker threads once they finish what they are doing. Later updates run on the calling thread alone.
+     */
+    public void shutdown()
+    {
+        synchronized (this.mLock)
+        {
+            this.mShutdown = true;
+            this.mLock.notifyAll();
+        }
+    }
+
+    private boolean updateRange(final ParticleStore pParticleStore, final float pSecondsElapsed, final int pParticleCount, final int pRange)
+    {
+        final int ranges = this.mRangeModified.length;
+        final int start = (int) ((long) pParticleCount * pRange / ranges);
+        final int end = (int) ((long) pParticleCount * (pRange + 1) / ranges);
+        return pParticleStore.updateSlots(start, end, pSecondsElapsed);
+    }
+
+    private void runWorker(final int pRange)
+    {
+        int round = 0;
+        while (true)
+        {
+            final ParticleStore store;
+            final float secondsElapsed;
+            final int particleCount;
+            synchronized (this.mLock)
+            {
+                while (this.mRound == round && !this.mShutdown)
+                {
+                    try
+                    {
+                        this.mLock.wait();
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        // Only shutdown() stops a worker
+                    }
+                }
+                if (this.mRound == round)
+                {
+                    return;
+                }
+                round = this.mRound;
+                store = this.mStore;
+                secondsElapsed = this.mSecondsElapsed;
+                particleCount = this.mParticleCount;
+            }
+
+            this.mRangeModified[pRange] = updateRange(store, secondsElapsed, particleCount, pRange);
+
+            synchronized (this.mLock)
+            {
+                if (--this.mRangesPending == 0)
+                {
+                    this.mLock.notifyAll();
+                }
+            }
+        }
+    }
+}
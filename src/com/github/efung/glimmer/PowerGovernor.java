@@ -0,0 +1,246 @@
+package com.github.efung.glimmer;
+
+import org.andengine.input.sensor.SensorDelay;
+
+/**
+ * Lowers the wallpaper's quality in steps ("tiers") when it costs more CPU time than its budget, or the battery is
+ * hot or low, and raises it again once there is room.
+ *
+ * CPU load is the time spent producing frames over each evaluation window, as a fraction of that window. A window
+ * over budget drops a tier straight away. Going back up takes several windows in a row well under budget, and not
+ * too soon after the last change, so that the tier doesn't flap between two levels whose costs straddle the budget.
+ * Battery temperature and level have separate thresholds for entering and leaving each state, for the same reason.
+ *
+ * Frames are reported on the GL thread and battery state on the main thread. The tier can be read from any thread.
+ */
+public class PowerGovernor
+{
+    public static final int TIER_FULL = 0;
+    public static final int TIER_REDUCED = 1;
+    public static final int TIER_LOW = 2;
+    public static final int TIER_MINIMAL = 3;
+
+    public static final int REASON_NONE = 0;
+    public static final int REASON_LOAD = 1;
+    public static final int REASON_HOT = 2;
+    public static final int REASON_BATTERY = 3;
+
+    private static final String[] REASON_NAMES = { "", "load", "hot", "battery" };
+
+    // Per tier
+    private static final float[] PARTICLE_DENSITY = { 1f, 0.75f, 0.5f, 0.35f };
+    private static final float[] FRAME_RATE_SCALE = { 1f, 0.8f, 0.6f, 0.4f };
+    private static final SensorDelay[] MOVING_SENSOR_DELAY = { SensorDelay.GAME, SensorDelay.GAME, SensorDelay.UI, SensorDelay.NORMAL };
+    private static final float[] REFLECT_LIGHT_UPDATE_SECONDS = { 0f, 0f, 0.1f, 0.2f };
+
+    private static final long EVALUATION_NANOS = 2000000000L;
+    // Going up a tier also needs load under this fraction of the budget, for this many windows, this long after a change
+    private static final float STEP_UP_HEADROOM = 0.5f;
+    private static final int STEP_UP_WINDOWS = 3;
+    private static final long STEP_UP_DELAY_NANOS = 10000000000L;
+
+    // Battery temperature in degrees Celsius: hot from the first value until below the second
+    private static final float HOT_ENTER = 41f;
+    private static final float HOT_LEAVE = 38f;
+    private static final float VERY_HOT_ENTER = 45f;
+    private static final float VERY_HOT_LEAVE = 42f;
+    // Battery level: low from the first value, while not charging, until above the second
+    private static final float LOW_BATTERY_ENTER = 0.15f;
+    private static final float LOW_BATTERY_LEAVE = 0.2f;
+
+    private final float mCpuBudget;
+
+    // Only written on the GL thread
+    private long mWindowStartNanos = -1;
+    private long mWindowBusyNanos;
+    private volatile int mLoadTier = TIER_FULL;
+    private int mWindowsUnderBudget;
+    private long mLastLoadTierChangeNanos;
+    private float mLoad;
+
+    // Only written on the main thread
+    private boolean mHot;
+    private boolean mVeryHot;
+    private boolean mLowBattery;
+    private volatile int mConstraintTier = TIER_FULL;
+    private volatile int mConstraintReason = REASON_NONE;
+
+    private volatile int mTier = TIER_FULL;
+    private volatile int mReason = REASON_NONE;
+
+    /**
+     * @param pCpuBudget fraction of one core's time that producing frames may take, e.g. 0.1 for 100 ms per second
+     */
+    public PowerGovernor(final float pCpuBudget)
+    {
+        this.mCpuBudget = pCpuBudget;
+    }
+
+    public int getTier()
+    {
+        return this.mTier;
+    }
+
+    /**
+     * @return what the current tier is down to, one of REASON_*
+     */
+    public int getReason()
+    {
+        return this.mReason;
+    }
+
+    public static String getReasonName(final int pReason)
+    {
+        return REASON_NAMES[pReason];
+    }
+
+    /**
+     * @return the fraction of the grid's tiles that may hold a particle at the given tier
+     */
+    public static float getParticleDensity(final int pTier)
+    {
+        return PARTICLE_DENSITY[pTier];
+    }
+
+    /**
+     * @return the fraction of the full frame rate that may be used at the given tier
+     */
+    public static float getFrameRateScale(final int pTier)
+    {
+        return FRAME_RATE_SCALE[pTier];
+    }
+
+    public static SensorDelay getMovingSensorDelay(final int pTier)
+    {
+        return MOVING_SENSOR_DELAY[pTier];
+    }
+
+    /**
+     * @return the shortest time between two Reflect Light updates at the given tier, or 0 for every frame
+     */
+    public static float getReflectLightUpdateSeconds(final int pTier)
+    {
+        return REFLECT_LIGHT_UPDATE_SECONDS[pTier];
+    }
+
+    /**
+     * @return the CPU load measured over the last evaluation window, as a fraction of one core
+     */
+    public float getLoad()
+    {
+        return this.mLoad;
+    }
+
+    /**
+     * Starts a new evaluation window without changing the tier, e.g. after being paused, as the pause isn't idle
+     * time that should count towards the load.
+     */
+    public void restartWindow()
+    {
+        this.mWindowStartNanos = -1;
+    }
+
+    /**
+     * @param pFrameNanos CPU time spent producing the frame that just ended
+     * @param pNowNanos System.nanoTime() at its end
+     */
+    public void onFrame(final long pFrameNanos, final long pNowNanos)
+    {
+        if (this.mWindowStartNanos < 0)
+        {
+            this.mWindowStartNanos = pNowNanos;
+            this.mWindowBusyNanos = 0;
+            return;
+        }
+
+        this.mWindowBusyNanos += pFrameNanos;
+        final long windowNanos = pNowNanos - this.mWindowStartNanos;
+        if (windowNanos < EVALUATION_NANOS)
+        {
+            return;
+        }
+
+        this.mLoad = this.mWindowBusyNanos / (float) windowNanos;
+        this.mWindowStartNanos = pNowNanos;
+        this.mWindowBusyNanos = 0;
+
+        if (this.mLoad > this.mCpuBudget)
+        {
+            this.mWindowsUnderBudget = 0;
+            if (this.mLoadTier < TIER_MINIMAL)
+            {
+                this.mLoadTier++;
+                this.mLastLoadTierChangeNanos = pNowNanos;
+            }
+        }
+        else if (this.mLoad < this.mCpuBudget * STEP_UP_HEADROOM)
+        {
+            this.mWindowsUnderBudget++;
+            if (this.mLoadTier > TIER_FULL && this.mWindowsUnderBudget >= STEP_UP_WINDOWS
+                    && pNowNanos - this.mLastLoadTierChangeNanos >= STEP_UP_DELAY_NANOS)
+            {
+                this.mLoadTier--;
+                this.mLastLoadTierChangeNanos = pNowNanos;
+                this.mWindowsUnderBudget = 0;
+            }
+        }
+        else
+        {
+            this.mWindowsUnderBudget = 0;
+        }
+
+        updateTier();
+    }
+
+    /**
+     * @param pLevel battery charge, from 0 to 1
+     * @param pCharging whether the device is plugged in
+     * @param pTemperature battery temperature in degrees Celsius
+     */
+    public void setBatteryState(final float pLevel, final boolean pCharging, final float pTemperature)
+    {
+        this.mVeryHot = pTemperature >= (this.mVeryHot ? VERY_HOT_LEAVE : VERY_HOT_ENTER);
+        this.mHot = pTemperature >= (this.mHot ? HOT_LEAVE : HOT_ENTER);
+        this.mLowBattery = !pCharging && pLevel <= (this.mLowBattery ? LOW_BATTERY_LEAVE : LOW_BATTERY_ENTER);
+
+        if (this.mVeryHot)
+        {
+            setConstraint(TIER_MINIMAL, REASON_HOT);
+        }
+        else if (this.mLowBattery)
+        {
+            setConstraint(TIER_LOW, REASON_BATTERY);
+        }
+        else if (this.mHot)
+        {
+            setConstraint(TIER_REDUCED, REASON_HOT);
+        }
+        else
+        {
+            setConstraint(TIER_FULL, REASON_NONE);
+        }
+        updateTier();
+    }
+
+    private void setConstraint(final int pTier, final int pReason)
+    {
+        this.mConstraintReason = pReason;
+        this.mConstraintTier = pTier;
+    }
+
+    private synchronized void updateTier()
+    {
+        final int constraintTier = this.mConstraintTier;
+        final int loadTier = this.mLoadTier;
+        if (constraintTier >= loadTier)
+        {
+            this.mReason = constraintTier == TIER_FULL ? REASON_NONE : this.mConstraintReason;
+            this.mTier = constraintTier;
+        }
+        else
+        {
+            this.mReason = REASON_LOAD;
+            this.mTier = loadTier;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.efung.glimmer;
+
+/**
+ * Sets particle alpha for Reflect Light mode. The closer a dot's rotation is to the device's combined tilt, the
+ * brighter it is.
+ *
+ * Rotations and tilts are quantized so that every possible alpha is looked up in a precomputed table, particles are
+ * grouped by rotation bucket so that each bucket's alpha is looked up only once, and nothing at all is done while
+ * the quantized tilt stays the same, e.g. when the device lies on a desk.
+ */
+public class ReflectLightEngine implements IStoreParticleModifier, IVisualChangeSource
+{
+    private static final float ROTATION_MIN = -90f;
+    private static final float ROTATION_MAX = 90f;
+    private static final float ROTATION_BUCKET_DEGREES = 2f;
+    private static final int ROTATION_BUCKETS = (int) ((ROTATION_MAX - ROTATION_MIN) / ROTATION_BUCKET_DEGREES);
+
+    private static final float TILT_MIN = -90f;
+    private static final float TILT_MAX = 90f;
+    private static final float TILT_STEP_DEGREES = 1f;
+    private static final int TILT_STEPS = (int) ((TILT_MAX - TILT_MIN) / TILT_STEP_DEGREES) + 1;
+
+    // Alpha for each (tilt step, rotation bucket) pair, tilt-major so that one tilt's row is contiguous
+    private static final float[] ALPHA_TABLE = new float[TILT_STEPS * ROTATION_BUCKETS];
+
+    static
+    {
+        for (int tilt = 0; tilt < TILT_STEPS; tilt++)
+        {
+            for (int bucket = 0; bucket < ROTATION_BUCKETS; bucket++)
+            {
+                ALPHA_TABLE[tilt * ROTATION_BUCKETS + bucket] = getAlphaFromRotation(
+                        ROTATION_MIN + (bucket + 0.5f) * ROTATION_BUCKET_DEGREES, TILT_MIN + tilt * TILT_STEP_DEGREES);
+            }
+        }
+    }
+
+    private volatile float mCombinedTilt;
+    private int mLastTiltStep = -1;
+    private volatile float mVisualChangeRate; // Read by the engine on its own thread
+    private volatile float mMinUpdateSeconds; // May be set from any thread
+    private float mSecondsSinceUpdate;
+
+    // Live particle slots, sorted by rotation bucket. Bucket b owns mSlotsByBucket[mBucketStart[b] .. mBucketStart[b + 1]).
+    private int[] mSlotsByBucket = new int[0];
+    private final int[] mBucketStart = new int[ROTATION_BUCKETS + 1];
+    private int mGroupedGeneration = -1;
+
+    /**
+     * @param pCombinedTilt pitch + roll of the device, in degrees. Can be called from any thread.
+     */
+    public void setCombinedTilt(final float pCombinedTilt)
+    {
+        this.mCombinedTilt = pCombinedTilt;
+    }
+
+    /**
+     * Lets tilt changes wait until this long after the last update, to save CPU time when it is short. Particles
+     * that have just been spawned or moved are still updated straight away.
+     */
+    public void setMinUpdateSeconds(final float pMinUpdateSeconds)
+    {
+        this.mMinUpdateSeconds = pMinUpdateSeconds;
+    }
+
+    /**
+     * @return how fast alpha changed over the last update. Alpha falls by 1/180 per degree between rotation and
+     * tilt, so this follows how fast the device is being tilted.
+     */
+    @Override
+    public float getVisualChangeRate()
+    {
+        return this.mVisualChangeRate;
+    }
+
+    @Override
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex)
+    {
+        final int tiltStep = this.mLastTiltStep < 0 ? getTiltStep(0f) : this.mLastTiltStep;
+        pParticleStore.getAlphas()[pIndex] = ALPHA_TABLE[tiltStep * ROTATION_BUCKETS + getRotationBucket(pParticleStore.getRotations()[pIndex])];
+    }
+
+    @Override
+    public void onUpdateParticles(final ParticleStore pParticleStore, final float pSecondsElapsed)
+    {
+        final int tiltStep = getTiltStep(this.mCombinedTilt);
+        final boolean regrouped = pParticleStore.getGeneration() != this.mGroupedGeneration;
+        this.mSecondsSinceUpdate += pSecondsElapsed;
+        if (tiltStep == this.mLastTiltStep && !regrouped)
+        {
+            this.mVisualChangeRate = 0f;
+            this.mSecondsSinceUpdate = 0f;
+            return;
+        }
+        if (!regrouped && this.mSecondsSinceUpdate < this.mMinUpdateSeconds)
+        {
+            // Keep reporting the last rate, so that frames keep coming until the update is due
+            return;
+        }
+
+        if (this.mLastTiltStep >= 0 && this.mSecondsSinceUpdate > 0f)
+        {
+            this.mVisualChangeRate = Math.abs(tiltStep - this.mLastTiltStep) * TILT_STEP_DEGREES / 180f / this.mSecondsSinceUpdate;
+        }
+        this.mSecondsSinceUpdate = 0f;
+
+        if (regrouped)
+        {
+            groupByRotationBucket(pParticleStore);
+        }
+        this.mLastTiltStep = tiltStep;
+
+        final float[] alphas = pParticleStore.getAlphas();
+        final int[] slots = this.mSlotsByBucket;
+        final int[] bucketStart = this.mBucketStart;
+        final int row = tiltStep * ROTATION_BUCKETS;
+        for (int bucket = 0; bucket < ROTATION_BUCKETS; bucket++)
+        {
+            final float alpha = ALPHA_TABLE[row + bucket];
+            for (int i = bucketStart[bucket], end = bucketStart[bucket + 1]; i < end; i++)
+            {
+                alphas[slots[i]] = alpha;
+            }
+        }
+        pParticleStore.markModified();
+    }
+
+    private void groupByRotationBucket(final ParticleStore pParticleStore)
+    {
+        final int particlesAlive = pParticleStore.getParticlesAlive();
+        final float[] rotations = pParticleStore.getRotations();
+        final int[] tiles = pParticleStore.getTiles();
+        final int firstVisibleTile = pParticleStore.getFirstVisibleTile();
+        final int visibleTilesEnd = pParticleStore.getVisibleTilesEnd();
+        final int[] bucketStart = this.mBucketStart;
+
+        if (this.mSlotsByBucket.length < pParticleStore.getParticlesMaximum())
+        {
+            this.mSlotsByBucket = new int[pParticleStore.getParticlesMaximum()];
+        }
+
+        // Counting sort: count each bucket, turn counts into start offsets, then place slots. Only visible particles
+        // are grouped; the visible range changing regroups, which brings the newly visible ones up to date.
+        for (int bucket = 0; bucket <= ROTATION_BUCKETS; bucket++)
+        {
+            bucketStart[bucket] = 0;
+        }
+        for (int i = 0; i < particlesAlive; i++)
+        {
+            if (tiles[i] >= firstVisibleTile && tiles[i] < visibleTilesEnd)
+            {
+                bucketStart[getRotationBucket(rotations[i]) + 1]++;
+            }
+        }
+        for (int bucket = 0; bucket < ROTATION_BUCKETS; bucket++)
+        {
+            bucketStart[bucket + 1] += bucketStart[bucket];
+        }
+        for (int i = 0; i < particlesAlive; i++)
+        {
+            if (tiles[i] >= firstVisibleTile && tiles[i] < visibleTilesEnd)
+            {
+                final int bucket = getRotationBucket(rotations[i]);
+                this.mSlotsByBucket[bucketStart[bucket]++] = i;
+            }
+        }
+        // Placing advanced every start to the next bucket's start, so shift them back
+        for (int bucket = ROTATION_BUCKETS; bucket > 0; bucket--)
+        {
+            bucketStart[bucket] = bucketStart[bucket - 1];
+        }
+        bucketStart[0] = 0;
+
+        this.mGroupedGeneration = pParticleStore.getGeneration();
+    }
+
+    private static int getRotationBucket(final float pRotation)
+    {
+        final int bucket = (int) ((pRotation - ROTATION_MIN) / ROTATION_BUCKET_DEGREES);
+        return bucket < 0 ? 0 : (bucket >= ROTATION_BUCKETS ? ROTATION_BUCKETS - 1 : bucket);
+    }
+
+    private static int getTiltStep(final float pCombinedTilt)
+    {
+        // Tilts outside the table's range share its end steps, as getAlphaFromRotation clamps them anyway
+        final int step = Math.round((pCombinedTilt - TILT_MIN) / TILT_STEP_DEGREES);
+        return step < 0 ? 0 : (step >= TILT_STEPS ? TILT_STEPS - 1 : step);
+    }
+
+    /**
+     * Unquantized alpha of a dot, used to fill the lookup table.
+     */
+    public static float getAlphaFromRotation(final float pParticleRotation, float pCombinedTilt)
+    {
+        // The closer the particle angle is to the tilt angle, the brighter it is.
+        // Can't really see screen if tilt is more than 45 degrees, so we clamp it.
+        // Maximum difference will be 180 degrees, so normalize then convert to alpha.
+        pCombinedTilt = Math.max(-90f, Math.min(90f, pCombinedTilt));
+        return Math.max(0.2f, Math.min(1f, 1f - Math.abs(pParticleRotation - pCombinedTilt) / 180f));
+    }
+}
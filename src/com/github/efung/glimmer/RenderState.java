@@ -0,0 +1,100 @@
+package com.github.efung.glimmer;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Everything a {@link StaticGridRenderer} needs to draw one frame of a {@link ParticleStore}: each tile's colour,
+ * already packed for the colour stream, and which tiles are visible. Tiles outside the visible range hold whatever
+ * they held before and aren't drawn.
+ */
+public class RenderState
+{
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int[] mTileColors;
+    private int mFirstVisibleTile;
+    private int mVisibleTilesEnd;
+
+    public RenderState(final int pGridTiles)
+    {
+        this.mTileColors = new int[pGridTiles];
+        this.mVisibleTilesEnd = pGridTiles;
+    }
+
+    /**
+     * @return per-tile colours, as premultiplied ABGR packed ints (see {@link #packColor}). Tiles left at 0 are not
+     * visible.
+     */
+    public int[] getTileColors()
+    {
+        return this.mTileColors;
+    }
+
+    public int getFirstVisibleTile()
+    {
+        return this.mFirstVisibleTile;
+    }
+
+    public int getVisibleTilesEnd()
+    {
+        return this.mVisibleTilesEnd;
+    }
+
+    /**
+     * For animations that pack the colours themselves: which tiles they packed.
+     */
+    public void setVisibleTiles(final int pFirstTile, final int pTilesEnd)
+    {
+        this.mFirstVisibleTile = pFirstTile;
+        this.mVisibleTilesEnd = pTilesEnd;
+    }
+
+    /**
+     * Packs the colours of the store's live particles on visible tiles, leaving the other visible tiles empty. Particles
+     * being trimmed are faded.
+     */
+    public void pack(final ParticleStore pParticleStore)
+    {
+        final int firstVisibleTile = pParticleStore.getFirstVisibleTile();
+        final int visibleTilesEnd = pParticleStore.getVisibleTilesEnd();
+        final int[] tiles = pParticleStore.getTiles();
+        final float[] alphas = pParticleStore.getAlphas();
+        final int[] colors = pParticleStore.getColors();
+        final float[] lifetimes = pParticleStore.getLifetimes();
+        final int trimStart = pParticleStore.getTrimStart();
+        final float trimFade = pParticleStore.getTrimFade();
+        final int[] tileColors = this.mTileColors;
+
+        Arrays.fill(tileColors, firstVisibleTile, visibleTilesEnd, 0);
+        for (int i = pParticleStore.getParticlesAlive() - 1; i >= 0; i--)
+        {
+            final int tile = tiles[i];
+            if (tile >= firstVisibleTile && tile < visibleTilesEnd)
+            {
+                final boolean trimmed = i >= trimStart && lifetimes[i] == ParticleStore.LIFETIME_INFINITE;
+                tileColors[tile] = packColor(colors[i], trimmed ? alphas[i] * trimFade : alphas[i]);
+            }
+        }
+        this.mFirstVisibleTile = firstVisibleTile;
+        this.mVisibleTilesEnd = visibleTilesEnd;
+    }
+
+    /**
+     * Converts an ARGB packed colour and an alpha into the premultiplied, byte-ordered format of the colour stream.
+     */
+    public static int packColor(final int pColorARGB, final float pAlpha)
+    {
+        final int alpha = (int) (pAlpha * 255f + 0.5f);
+        final int red = (((pColorARGB >> 16) & 0xFF) * alpha + 127) / 255;
+        final int green = (((pColorARGB >> 8) & 0xFF) * alpha + 127) / 255;
+        final int blue = ((pColorARGB & 0xFF) * alpha + 127) / 255;
+
+        // The colour attribute is read as bytes R, G, B, A from memory
+        if (LITTLE_ENDIAN)
+        {
+            return (alpha << 24) | (blue << 16) | (green << 8) | red;
+        }
+        return (red << 24) | (green << 16) | (blue << 8) | alpha;
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.efung.glimmer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Keeps a {@link GlimmerSettings} snapshot of the wallpaper's preferences up to date as they change, so that
+ * nothing has to be read or parsed when the wallpaper resumes.
+ *
+ * Changes are delivered on the main thread, and only the changed preference is read again. Each one publishes a new
+ * snapshot with the next version, which any thread can pick up with {@link #getSettings()}.
+ */
+public class SettingsStore implements SharedPreferences.OnSharedPreferenceChangeListener
+{
+    private final SharedPreferences mPreferences;
+    private final String mModeKey;
+    private final String mDotSizeKey;
+    private final String mColourChangePeriodKey;
+    private final String mStaticColourKey;
+    private final String mShowFpsKey;
+    private final String mScrollKey;
+    private final String mLightweightKey;
+
+    private volatile GlimmerSettings mSettings;
+
+    public SettingsStore(final Context pContext)
+    {
+        this.mPreferences = PreferenceManager.getDefaultSharedPreferences(pContext);
+        this.mModeKey = pContext.getString(R.string.prefs_key_mode);
+        this.mDotSizeKey = pContext.getString(R.string.prefs_key_dot_size);
+        this.mColourChangePeriodKey = pContext.getString(R.string.prefs_key_colour_change_period);
+        this.mStaticColourKey = pContext.getString(R.string.prefs_key_single_colour);
+        this.mShowFpsKey = pContext.getString(R.string.prefs_key_display_fps);
+        this.mScrollKey = pContext.getString(R.string.prefs_key_scroll);
+        this.mLightweightKey = pContext.getString(R.string.prefs_key_lightweight);
+    }
+
+    /**
+     * Reads every preference once, then follows changes until {@link #stop()}.
+     */
+    public void start()
+    {
+        this.mSettings = new GlimmerSettings(0, readMode(), readDotSize(), readColourChangePeriod(), readStaticColour(), readShowFps(), readScroll(), readLightweight());
+        // SharedPreferences only keeps a weak reference to its listeners, so whoever owns this store keeps it alive
+        this.mPreferences.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    public void stop()
+    {
+        this.mPreferences.unregisterOnSharedPreferenceChangeListener(this);
+    }
+
+    /**
+     * @return the latest snapshot. Compare its version with that of the last one used to tell whether anything
+     * might have changed since.
+     */
+    public GlimmerSettings getSettings()
+    {
+        return this.mSettings;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(final SharedPreferences pSharedPreferences, final String pKey)
+    {
+        final GlimmerSettings settings = this.mSettings;
+        int mode = settings.getMode();
+        int dotSize = settings.getDotSize();
+        float colourChangePeriod = settings.getColourChangePeriod();
+        int staticColour = settings.getStaticColour();
+        boolean showFps = settings.isShowFps();
+        boolean scroll = settings.isScroll();
+        boolean lightweight = settings.isLightweight();
+
+        if (this.mModeKey.equals(pKey))
+        {
+            mode = readMode();
+        }
+        else if (this.mDotSizeKey.equals(pKey))
+        {
+            dotSize = readDotSize();
+        }
+        else if (this.mColourChangePeriodKey.equals(pKey))
+        {
+            colourChangePeriod = readColourChangePeriod();
+        }
+        else if (this.mStaticColourKey.equals(pKey))
+        {
+            staticColour = readStaticColour();
+        }
+        else if (this.mShowFpsKey.equals(pKey))
+        {
+            showFps = readShowFps();
+        }
+        else if (this.mScrollKey.equals(pKey))
+        {
+            scroll = readScroll();
+        }
+        else if (this.mLightweightKey.equals(pKey))
+        {
+            lightweight = readLightweight();
+        }
+        else
+        {
+            return;
+        }
+
+        this.mSettings = new GlimmerSettings(settings.getVersion() + 1, mode, dotSize, colourChangePeriod, staticColour, showFps, scroll, lightweight);
+    }
+
+    private int readMode()
+    {
+        return Integer.valueOf(this.mPreferences.getString(this.mModeKey, String.valueOf(GlimmerPreferenceActivity.PREFS_MODE_DEFAULT)));
+    }
+
+    private int readDotSize()
+    {
+        return Integer.valueOf(this.mPreferences.getString(this.mDotSizeKey, String.valueOf(GlimmerPreferenceActivity.PREFS_DOT_SIZE_DEFAULT)));
+    }
+
+    private float readColourChangePeriod()
+    {
+        return this.mPreferences.getInt(this.mColourChangePeriodKey, GlimmerPreferenceActivity.PREFS_COLOUR_CHANGE_PERIOD_DEFAULT);
+    }
+
+    private int readStaticColour()
+    {
+        return this.mPreferences.getInt(this.mStaticColourKey, GlimmerPreferenceActivity.PREFS_SINGLE_COLOUR_DEFAULT);
+    }
+
+    private boolean readShowFps()
+    {
+        return this.mPreferences.getBoolean(this.mShowFpsKey, GlimmerPreferenceActivity.PREFS_SHOW_FPS_DEFAULT);
+    }
+
+    private boolean readScroll()
+    {
+        return this.mPreferences.getBoolean(this.mScrollKey, GlimmerPreferenceActivity.PREFS_SCROLL_DEFAULT);
+    }
+
+    private boolean readLightweight()
+    {
+        return this.mPreferences.getBoolean(this.mLightweightKey, GlimmerPreferenceActivity.PREFS_LIGHTWEIGHT_DEFAULT);
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.efung.glimmer;
+
+import java.util.HashMap;
+
+/**
+ * A process-wide cache of resources that concurrent wallpaper engines, such as the home screen's and a preview's, share
+ * instead of each building their own. Only resources that are read-only once built and live on the CPU side belong
+ * here, as every engine draws into a GL context of its own.
+ *
+ * Resources are counted by reference: each {@link #acquire} must be matched by a {@link #release} of the same key, and
+ * a resource is dropped once nothing holds it any more. Keys name everything a resource is built from, so that equal
+ * keys always mean equal resources.
+ */
+public final class SharedResources
+{
+    public interface IFactory<T>
+    {
+        public T create();
+    }
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    private SharedResources()
+    {
+    }
+
+    /**
+     * @return the resource cached under the key, built by the factory first if nothing holds one yet. Building happens
+     * under the cache's lock, so an engine asking for the same resource meanwhile waits for it instead of building it
+     * again.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T acquire(final String pKey, final IFactory<T> pFactory)
+    {
+        synchronized (sEntries)
+        {
+            Entry entry = sEntries.get(pKey);
+            if (entry == null)
+            {
+                entry = new Entry(pFactory.create());
+                sEntries.put(pKey, entry);
+            }
+            entry.mReferences++;
+            return (T) entry.mResource;
+        }
+    }
+
+    public static void release(final String pKey)
+    {
+        synchronized (sEntries)
+        {
+            final Entry entry = sEntries.get(pKey);
+            if (entry == null)
+            {
+                throw new IllegalStateException("Released more often than acquired: " + pKey);
+            }
+            if (--entry.mReferences == 0)
+            {
+                sEntries.remove(pKey);
+            }
+        }
+    }
+
+    /**
+     * @return how many holders the resource under the key has, 0 if it isn't cached
+     */
+    public static int getReferenceCount(final String pKey)
+    {
+        synchronized (sEntries)
+        {
+            final Entry entry = sEntries.get(pKey);
+            return entry != null ? entry.mReferences : 0;
+        }
+    }
+
+    private static class Entry
+    {
+        private final Object mResource;
+        private int mReferences;
+
+        private Entry(final Object pResource)
+        {
+            this.mResource = pResource;
+        }
+    }
+}
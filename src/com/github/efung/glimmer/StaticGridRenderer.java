@@ -0,0 +1,269 @@
+package com.github.efung.glimmer;
+
+import android.opengl.GLES20;
+import org.andengine.opengl.shader.constants.ShaderProgramConstants;
+import org.andengine.opengl.texture.region.ITextureRegion;
+import org.andengine.opengl.util.GLState;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Draws one textured quad per grid tile. Dots never move, so the quads (position, rotation and texture
+ * coordinates) are built once, as a {@link GridGeometry} shared with other renderers of the same layout, and uploaded
+ * to a static buffer. Each frame only the per-vertex colours of a
+ * {@link RenderState} are streamed, 16 bytes per tile instead of the 120 bytes SpriteBatch sends for every sprite,
+ * and only for chunks of tiles whose colours changed (see {@link ColorUploadTracker}).
+ */
+public class StaticGridRenderer
+{
+    static final int VERTICES_PER_TILE = 4;
+    static final int INDICES_PER_TILE = 6;
+    private static final int GEOMETRY_FLOATS_PER_VERTEX = 4; // x, y, u, v
+    static final int GEOMETRY_STRIDE = GEOMETRY_FLOATS_PER_VERTEX * 4;
+    private static final int COLOR_STRIDE = 4; // RGBA, one unsigned byte each
+
+    // Indices are unsigned shorts, so a single draw call can address at most this many tiles
+    static final int TILES_PER_BATCH = 65536 / VERTICES_PER_TILE;
+
+    // Buffers of released renderers, deleted on the GL thread by the next renderer that draws
+    private static final ArrayList<Integer> sBuffersToDelete = new ArrayList<Integer>();
+    private static final ArrayList<Integer> sIndexBuffersToDelete = new ArrayList<Integer>();
+
+    private final int mGridTiles;
+    private final String mGeometryKey;
+    private boolean mGeometryHeld; // Until released
+    private final FloatBuffer mGeometry;
+    private final ShortBuffer mIndices;
+    private final IntBuffer mColorBuffer;
+    private final int[] mVertexColors;
+    private final ColorUploadTracker mUploadTracker;
+    private final ITextureRegion mTextureRegion;
+
+    private int mGeometryBufferID = -1;
+    private int mIndexBufferID = -1;
+    private int mColorBufferID = -1;
+    private volatile boolean mLoadedToHardware; // Set on the GL thread, cleared by release() from any thread
+    private FrameProfiler mFrameProfiler;
+    private int mFirstVisibleTile;
+    private int mVisibleTilesEnd;
+
+    public StaticGridRenderer(final ITileEmitter pEmitter, final ITextureRegion pTextureRegion)
+    {
+        this.mGridTiles = pEmitter.getGridTiles();
+        this.mTextureRegion = pTextureRegion;
+
+        final GridGeometry gridGeometry = GridGeometry.acquire(pEmitter, pTextureRegion);
+        this.mGeometryKey = GridGeometry.getKey(pEmitter, pTextureRegion);
+        this.mGeometryHeld = true;
+        this.mGeometry = gridGeometry.getGeometry();
+        this.mIndices = gridGeometry.getIndices();
+
+        this.mColorBuffer = ByteBuffer.allocateDirect(this.mGridTiles * VERTICES_PER_TILE * COLOR_STRIDE)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        this.mVertexColors = new int[this.mGridTiles * VERTICES_PER_TILE];
+        this.mUploadTracker = new ColorUploadTracker(this.mGridTiles);
+        this.mVisibleTilesEnd = this.mGridTiles;
+    }
+
+    /**
+     * @param pFrameProfiler receives the time spent uploading colours and drawing, or null
+     */
+    public void setFrameProfiler(final FrameProfiler pFrameProfiler)
+    {
+        this.mFrameProfiler = pFrameProfiler;
+    }
+
+    public FrameProfiler getFrameProfiler()
+    {
+        return this.mFrameProfiler;
+    }
+
+    public int getGridTiles()
+    {
+        return this.mGridTiles;
+    }
+
+    public void setNotLoadedToHardware()
+    {
+        this.mLoadedToHardware = false;
+        GridShaderProgram.getInstance().setCompiled(false);
+
+        // Whatever was queued for deletion died with the old context
+        synchronized (sBuffersToDelete)
+        {
+            sBuffersToDelete.clear();
+            sIndexBuffersToDelete.clear();
+        }
+    }
+
+    /**
+     * Queues this renderer's hardware buffers for deletion, and lets go of the shared geometry. Can be called from any
+     * thread.
+     */
+    public void release()
+    {
+        if (this.mGeometryHeld)
+        {
+            SharedResources.release(this.mGeometryKey);
+            this.mGeometryHeld = false;
+        }
+
+        if (this.mLoadedToHardware)
+        {
+            synchronized (sBuffersToDelete)
+            {
+                sBuffersToDelete.add(this.mGeometryBufferID);
+                sBuffersToDelete.add(this.mColorBufferID);
+                sIndexBuffersToDelete.add(this.mIndexBufferID);
+            }
+            this.mLoadedToHardware = false;
+        }
+    }
+
+    private static void deleteReleasedBuffers(final GLState pGLState)
+    {
+        synchronized (sBuffersToDelete)
+        {
+            for (int i = sBuffersToDelete.size() - 1; i >= 0; i--)
+            {
+                pGLState.deleteArrayBuffer(sBuffersToDelete.get(i));
+            }
+            for (int i = sIndexBuffersToDelete.size() - 1; i >= 0; i--)
+            {
+                pGLState.deleteIndexBuffer(sIndexBuffersToDelete.get(i));
+            }
+            sBuffersToDelete.clear();
+            sIndexBuffersToDelete.clear();
+        }
+    }
+
+    private void loadToHardware(final GLState pGLState)
+    {
+        this.mGeometryBufferID = pGLState.generateBuffer();
+        pGLState.bindArrayBuffer(this.mGeometryBufferID);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, this.mGeometry.capacity() * 4, this.mGeometry, GLES20.GL_STATIC_DRAW);
+
+        this.mColorBufferID = pGLState.generateBuffer();
+        pGLState.bindArrayBuffer(this.mColorBufferID);
+        // Changed often, but only in parts, so it is kept rather than streamed
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, this.mColorBuffer.capacity() * 4, null, GLES20.GL_DYNAMIC_DRAW);
+        this.mUploadTracker.invalidate();
+
+        this.mIndexBufferID = pGLState.generateBuffer();
+        pGLState.bindIndexBuffer(this.mIndexBufferID);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, this.mIndices.capacity() * 2, this.mIndices, GLES20.GL_STATIC_DRAW);
+
+        this.mLoadedToHardware = true;
+    }
+
+    /**
+     * Draws the visible tiles of a render state.
+     *
+     * @param pColorsChanged whether the state's colours changed since the last draw. If not, the colours already in
+     *                       the hardware buffer are drawn again.
+     */
+    public void draw(final GLState pGLState, final RenderState pRenderState, final boolean pColorsChanged)
+    {
+        final FrameProfiler frameProfiler = this.mFrameProfiler;
+        final long start = frameProfiler != null ? System.nanoTime() : 0;
+        long uploadNanos = 0;
+
+        deleteReleasedBuffers(pGLState);
+
+        // Tiles that have just come into view are uploaded if they differ from what the buffer last got for them
+        this.mFirstVisibleTile = pRenderState.getFirstVisibleTile();
+        this.mVisibleTilesEnd = pRenderState.getVisibleTilesEnd();
+        boolean colorsChanged = pColorsChanged;
+        if (!this.mLoadedToHardware)
+        {
+            loadToHardware(pGLState);
+            colorsChanged = true;
+        }
+
+        if (colorsChanged)
+        {
+            final long uploadStart = frameProfiler != null ? System.nanoTime() : 0;
+            uploadColors(pGLState, pRenderState.getTileColors());
+            if (frameProfiler != null)
+            {
+                uploadNanos = System.nanoTime() - uploadStart;
+                frameProfiler.add(FrameProfiler.PHASE_UPLOAD, uploadNanos);
+            }
+        }
+
+        this.mTextureRegion.getTexture().bind(pGLState);
+        pGLState.enableBlend();
+        pGLState.blendFunction(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        final GridShaderProgram shaderProgram = GridShaderProgram.getInstance();
+        shaderProgram.bindProgram(pGLState);
+        pGLState.bindIndexBuffer(this.mIndexBufferID);
+
+        for (int firstTile = this.mFirstVisibleTile; firstTile < this.mVisibleTilesEnd; firstTile += TILES_PER_BATCH)
+        {
+            final int tiles = Math.min(TILES_PER_BATCH, this.mVisibleTilesEnd - firstTile);
+            final int firstVertex = firstTile * VERTICES_PER_TILE;
+
+            pGLState.bindArrayBuffer(this.mGeometryBufferID);
+            GLES20.glVertexAttribPointer(ShaderProgramConstants.ATTRIBUTE_POSITION_LOCATION, 2, GLES20.GL_FLOAT, false,
+                    GEOMETRY_STRIDE, firstVertex * GEOMETRY_STRIDE);
+            GLES20.glVertexAttribPointer(ShaderProgramConstants.ATTRIBUTE_TEXTURECOORDINATES_LOCATION, 2, GLES20.GL_FLOAT, false,
+                    GEOMETRY_STRIDE, firstVertex * GEOMETRY_STRIDE + 2 * 4);
+
+            pGLState.bindArrayBuffer(this.mColorBufferID);
+            GLES20.glVertexAttribPointer(ShaderProgramConstants.ATTRIBUTE_COLOR_LOCATION, 4, GLES20.GL_UNSIGNED_BYTE, true,
+                    COLOR_STRIDE, firstVertex * COLOR_STRIDE);
+
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, tiles * INDICES_PER_TILE, GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+
+        shaderProgram.unbindProgram();
+
+        if (frameProfiler != null)
+        {
+            // Draw calls only queue work, so this is the CPU side of drawing
+            frameProfiler.add(FrameProfiler.PHASE_DRAW, System.nanoTime() - start - uploadNanos);
+        }
+    }
+
+    /**
+     * Uploads the runs of visible tiles whose colours differ from what the hardware buffer holds.
+     */
+    private void uploadColors(final GLState pGLState, final int[] pTileColors)
+    {
+        final ColorUploadTracker uploadTracker = this.mUploadTracker;
+        final int runs = uploadTracker.findChangedRuns(pTileColors, this.mFirstVisibleTile, this.mVisibleTilesEnd);
+        if (runs == 0)
+        {
+            return;
+        }
+
+        pGLState.bindArrayBuffer(this.mColorBufferID);
+        final int[] vertexColors = this.mVertexColors;
+        for (int run = 0; run < runs; run++)
+        {
+            final int runStart = uploadTracker.getRunStart(run);
+            final int runEnd = uploadTracker.getRunEnd(run);
+            final int firstVertex = runStart * VERTICES_PER_TILE;
+            final int vertices = (runEnd - runStart) * VERTICES_PER_TILE;
+            for (int tile = runStart, vertex = firstVertex; tile < runEnd; tile++)
+            {
+                final int color = pTileColors[tile];
+                vertexColors[vertex++] = color;
+                vertexColors[vertex++] = color;
+                vertexColors[vertex++] = color;
+                vertexColors[vertex++] = color;
+            }
+
+            this.mColorBuffer.position(firstVertex);
+            this.mColorBuffer.put(vertexColors, firstVertex, vertices);
+            this.mColorBuffer.position(firstVertex);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, firstVertex * COLOR_STRIDE, vertices * COLOR_STRIDE, this.mColorBuffer);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.efung.glimmer;
+
+/**
+ * Linearly ramps alpha between two values while a particle's age is within [fromTime, toTime], like AndEngine's
+ * AlphaParticleModifier.
+ */
+public class StoreAlphaModifier implements IStoreParticleModifier, IVisualChangeSource
+{
+    private final float mFromTime;
+    private final float mToTime;
+    private final float mFromAlpha;
+    private final float mToAlpha;
+
+    public StoreAlphaModifier(final float pFromTime, final float pToTime, final float pFromAlpha, final float pToAlpha)
+    {
+        this.mFromTime = pFromTime;
+        this.mToTime = pToTime;
+        this.mFromAlpha = pFromAlpha;
+        this.mToAlpha = pToAlpha;
+    }
+
+    public float getFromTime()
+    {
+        return this.mFromTime;
+    }
+
+    public float getToTime()
+    {
+        return this.mToTime;
+    }
+
+    public float getFromAlpha()
+    {
+        return this.mFromAlpha;
+    }
+
+    public float getToAlpha()
+    {
+        return this.mToAlpha;
+    }
+
+    @Override
+    public float getVisualChangeRate()
+    {
+        return Math.abs(this.mToAlpha - this.mFromAlpha) / (this.mToTime - this.mFromTime);
+    }
+
+    @Override
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex)
+    {
+        pParticleStore.getAlphas()[pIndex] = this.mFromAlpha;
+    }
+
+    @Override
+    public void onUpdateParticles(final ParticleStore pParticleStore, final float pSecondsElapsed)
+    {
+        final float[] ages = pParticleStore.getAges();
+        final float[] alphas = pParticleStore.getAlphas();
+        final float fromTime = this.mFromTime;
+        final float toTime = this.mToTime;
+        final float slope = (this.mToAlpha - this.mFromAlpha) / (toTime - fromTime);
+        boolean modified = false;
+
+        for (int i = pParticleStore.getParticlesAlive() - 1; i >= 0; i--)
+        {
+            final float age = ages[i];
+            if (age > fromTime && age < toTime)
+            {
+                alphas[i] = this.mFromAlpha + (age - fromTime) * slope;
+                modified = true;
+            }
+        }
+
+        if (modified)
+        {
+            pParticleStore.markModified();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.efung.glimmer;
+
+/**
+ * Gives newly spawned particles a single colour, which can be changed while the store is running.
+ */
+public class StoreColorInitializer implements IStoreParticleInitializer
+{
+    private int mColorARGB;
+
+    public StoreColorInitializer(final int pColorARGB)
+    {
+        this.mColorARGB = pColorARGB;
+    }
+
+    public int getColor()
+    {
+        return this.mColorARGB;
+    }
+
+    public void setColor(final int pColorARGB)
+    {
+        this.mColorARGB = pColorARGB;
+    }
+
+    @Override
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex)
+    {
+        pParticleStore.getColors()[pIndex] = this.mColorARGB;
+    }
+}
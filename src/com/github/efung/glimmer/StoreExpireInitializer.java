@@ -0,0 +1,22 @@
+package com.github.efung.glimmer;
+
+public class StoreExpireInitializer implements IStoreParticleInitializer
+{
+    private final float mLifetime;
+
+    public StoreExpireInitializer(final float pLifetime)
+    {
+        this.mLifetime = pLifetime;
+    }
+
+    public float getLifetime()
+    {
+        return this.mLifetime;
+    }
+
+    @Override
+    public void onInitializeParticle(final ParticleStore pParticleStore, final int pIndex)
+    {
+        pParticleStore.getLifetimes()[pIndex] = this.mLifetime;
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.efung.glimmer;
+
+/**
+ * Stateless per-tile pseudo-random values, so that properties which never change for a tile (such as the
+ * rotation of its dot) can be recomputed on demand instead of stored.
+ */
+public final class TileHash
+{
+    private TileHash()
+    {
+    }
+
+    public static int hash(final int pSeed, final int pValue)
+    {
+        // MurmurHash3 finalizer
+        int h = pSeed ^ (pValue * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return a value in [0, 1)
+     */
+    public static float unit(final int pSeed, final int pValue)
+    {
+        return (hash(pSeed, pValue) >>> 8) * (1f / (1 << 24));
+    }
+}
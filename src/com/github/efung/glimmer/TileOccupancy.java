@@ -0,0 +1,99 @@
+package com.github.efung.glimmer;
+
+import java.util.Random;
+
+/**
+ * Tracks which tiles hold a live particle, so that a free tile can be picked at random in constant time.
+ *
+ * Occupied tiles are marked in a bitset. Free tiles are kept, in no particular order, in the first
+ * {@link #getFreeTiles()} entries of a list: acquiring one swaps it with the last free entry, and releasing one
+ * appends it again.
+ */
+public class TileOccupancy
+{
+    private final long[] mOccupied;
+    private final int[] mFreeList;
+    private int mFreeCount;
+
+    public TileOccupancy(final int pTiles)
+    {
+        this.mOccupied = new long[(pTiles + 63) >>> 6];
+        this.mFreeList = new int[pTiles];
+        for (int i = 0; i < pTiles; i++)
+        {
+            this.mFreeList[i] = i;
+        }
+        this.mFreeCount = pTiles;
+    }
+
+    public int getTiles()
+    {
+        return this.mFreeList.length;
+    }
+
+    public int getFreeTiles()
+    {
+        return this.mFreeCount;
+    }
+
+    public boolean isOccupied(final int pTile)
+    {
+        return (this.mOccupied[pTile >>> 6] & (1L << pTile)) != 0;
+    }
+
+    /**
+     * @return a free tile picked uniformly at random, now marked occupied, or -1 if every tile is occupied.
+     */
+    public int acquireRandom(final Random pRandom)
+    {
+        if (this.mFreeCount == 0)
+        {
+            return -1;
+        }
+
+        final int slot = pRandom.nextInt(this.mFreeCount);
+        final int last = --this.mFreeCount;
+        final int tile = this.mFreeList[slot];
+        this.mFreeList[slot] = this.mFreeList[last];
+        this.mFreeList[last] = tile;
+
+        this.mOccupied[tile >>> 6] |= 1L << tile;
+        return tile;
+    }
+
+    /**
+     * Marks the first pCount of the given tiles occupied, rebuilding the free list in one pass rather than removing
+     * them from it one at a time.
+     */
+    public void occupy(final int[] pTiles, final int pCount)
+    {
+        for (int i = 0; i < pCount; i++)
+        {
+            this.mOccupied[pTiles[i] >>> 6] |= 1L << pTiles[i];
+        }
+
+        int freeCount = 0;
+        for (int tile = 0, tiles = this.mFreeList.length; tile < tiles; tile++)
+        {
+            if (!isOccupied(tile))
+            {
+                this.mFreeList[freeCount++] = tile;
+            }
+        }
+        this.mFreeCount = freeCount;
+    }
+
+    /**
+     * Marks the tile free again. Releasing a tile that is already free does nothing.
+     */
+    public void release(final int pTile)
+    {
+        if (!isOccupied(pTile))
+        {
+            return;
+        }
+
+        this.mOccupied[pTile >>> 6] &= ~(1L << pTile);
+        this.mFreeList[this.mFreeCount++] = pTile;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.efung.glimmer;
+
+import java.util.Random;
+
+/**
+ * Walks a pseudo-random permutation of [0, size) without storing it, so every tile comes up exactly once per cycle.
+ *
+ * An LCG modulo the next power of two m >= size has full period when its multiplier is 1 mod 4 and its increment
+ * is odd, i.e. it visits every value in [0, m) once. Its low bits are very regular, so each state is then scrambled
+ * by a bijection on [0, m) (xorshift, odd multiply, xorshift). Values that land outside [0, size) are skipped
+ * ("cycle walking"); as m < 2 * size, that takes fewer than two steps on average.
+ */
+public class TilePermutation
+{
+    private final int mSize;
+    private final int mMask;
+    private final int mShift;
+    private final int mMultiplier;
+    private final int mIncrement;
+    private final int mMixMultiplier;
+    private int mState;
+
+    public TilePermutation(final int pSize, final long pSeed)
+    {
+        this.mSize = pSize;
+
+        int bits = 0;
+        while (bits < 31 && (1 << bits) < pSize)
+        {
+            bits++;
+        }
+        this.mMask = (1 << bits) - 1;
+        this.mShift = Math.max(1, bits / 2);
+
+        final Random random = new Random(pSeed);
+        this.mMultiplier = (random.nextInt() & ~3) | 1;
+        this.mIncrement = random.nextInt() | 1;
+        this.mMixMultiplier = random.nextInt() | 1;
+        this.mState = random.nextInt() & this.mMask;
+    }
+
+    public int getSize()
+    {
+        return this.mSize;
+    }
+
+    /**
+     * @return where the walk has got to, so that a new permutation with the same size and seed can carry on from
+     * there with {@link #setState(int)}.
+     */
+    public int getState()
+    {
+        return this.mState;
+    }
+
+    public void setState(final int pState)
+    {
+        this.mState = pState & this.mMask;
+    }
+
+    public int next()
+    {
+        if (this.mSize <= 1)
+        {
+            return 0;
+        }
+
+        int value;
+        do
+        {
+            this.mState = (this.mState * this.mMultiplier + this.mIncrement) & this.mMask;
+            value = mix(this.mState);
+        }
+        while (value >= this.mSize);
+        return value;
+    }
+
+    private int mix(int pValue)
+    {
+        pValue ^= pValue >>> this.mShift;
+        pValue = (pValue * this.mMixMultiplier) & this.mMask;
+        pValue ^= pValue >>> this.mShift;
+        return pValue;
+    }
+}